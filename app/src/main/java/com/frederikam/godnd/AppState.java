@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * What the app is doing, in one place. Listeners hear about every change, and only about changes.
+ * Must only be used from the main thread.
+ */
+public class AppState {
+
+    public interface Listener {
+        void onStateChanged(AppState state);
+    }
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private boolean loaded = false; // Whether we know if the user has enabled the app
+    private boolean enabled = false;
+    private boolean inMotion = false;
+    private boolean passengerMode = false;
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return false until the user's setting has been loaded, in which case {@link #isEnabled()} can't be trusted
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isInMotion() {
+        return inMotion;
+    }
+
+    public boolean isPassengerMode() {
+        return passengerMode;
+    }
+
+    /**
+     * @return whether DND should be on right now
+     */
+    public boolean isDndWanted() {
+        return loaded && enabled && inMotion && !passengerMode;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (loaded && this.enabled == enabled) return;
+        this.loaded = true;
+        this.enabled = enabled;
+        notifyChanged();
+    }
+
+    public void setInMotion(boolean inMotion) {
+        if (this.inMotion == inMotion) return;
+        this.inMotion = inMotion;
+        // Passenger mode only lasts for the trip
+        this.passengerMode = false;
+        notifyChanged();
+    }
+
+    public void setPassengerMode(boolean passengerMode) {
+        if (this.passengerMode == passengerMode) return;
+        this.passengerMode = passengerMode;
+        notifyChanged();
+    }
+
+    private void notifyChanged() {
+        for (Listener listener : listeners) {
+            listener.onStateChanged(this);
+        }
+    }
+
+}
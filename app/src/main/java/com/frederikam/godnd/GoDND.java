@@ -23,21 +23,96 @@
 package com.frederikam.godnd;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
 
+import com.frederikam.godnd.dnd.DNDActuator;
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.physics.MotionDiagnostics;
+
+import java.io.File;
 import java.lang.ref.WeakReference;
 
 public class GoDND extends android.app.Application {
 
     private static WeakReference<Context> context;
+    private static MotionPipeline motionPipeline;
+    private static DNDActuator dndActuator;
+    private static SharedPreferences preferences;
+    private static AppState appState;
+    private static SessionRecorder sessionRecorder;
 
     @Override
     public void onCreate() {
         super.onCreate();
+        StartupTrace.markStart();
+        StartupTrace.beginSection("GoDND.onCreate");
         context = new WeakReference<>(getApplicationContext());
+        // Starts loading the file on a background thread, so it's likely ready by the time the activity wants it
+        preferences = getSharedPreferences(MainActivity.PREFERENCES, MODE_PRIVATE);
+        motionPipeline = new MotionPipeline(getApplicationContext());
+
+        if (BuildConfig.DEBUG) {
+            AppLog.setLevel(AppLog.DEBUG);
+        }
+        AppLog.start(new File(getFilesDir(), "logs"));
+
+        // If we were killed while DND was on, the user's settings must be put back before anything else happens
+        dndActuator = new DNDActuator(getApplicationContext(), new File(getFilesDir(), "dnd.journal"));
+        dndActuator.recover();
+
+        // DND follows the state of the app, whether or not anything is rendering it
+        appState = new AppState();
+        appState.addListener(new AppState.Listener() {
+            @Override
+            public void onStateChanged(AppState state) {
+                if (state.isLoaded()) {
+                    dndActuator.request(state.isDndWanted());
+                }
+            }
+        });
+        sessionRecorder = new SessionRecorder(new File(getFilesDir(), "history"));
+        appState.addListener(sessionRecorder);
+
+        // Enable with: adb shell setprop log.tag.com.frederikam.godnd VERBOSE
+        if (Log.isLoggable(AppLog.TAG, Log.VERBOSE)) {
+            AppLog.setLevel(AppLog.VERBOSE);
+            MotionDiagnostics.setSink(new MotionDiagnostics.Sink() {
+                @Override
+                public void onSampleStored(long timestamp, double velocity, double averageVelocity) {
+                    AppLog.log(AppLog.VERBOSE, "Stored sample {} at {}, average {}", velocity, timestamp, averageVelocity);
+                }
+            });
+        }
+
+        StartupTrace.endSection();
     }
 
     public static Context getContext() {
         return context.get();
     }
 
+    public static MotionPipeline getMotionPipeline() {
+        return motionPipeline;
+    }
+
+    /**
+     * Reading from these blocks until they have been loaded from disk
+     */
+    public static SharedPreferences getPreferences() {
+        return preferences;
+    }
+
+    public static AppState getAppState() {
+        return appState;
+    }
+
+    static SessionRecorder getSessionRecorder() {
+        return sessionRecorder;
+    }
+
+    public static DNDActuator getDndActuator() {
+        return dndActuator;
+    }
+
 }
@@ -28,8 +28,10 @@ import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
@@ -37,26 +39,37 @@ import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
-import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.CompoundButton;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
-import com.frederikam.godnd.dnd.DNDHandler;
-import com.frederikam.godnd.physics.EmulatorMotionManager;
-import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+import com.frederikam.godnd.physics.MotionListener;
 import com.frederikam.godnd.physics.MotionManager;
-import com.frederikam.godnd.physics.NonlinearMotionManager;
+import com.frederikam.godnd.physics.MotionStats;
+import com.frederikam.godnd.physics.SamplingScheduler;
+import com.frederikam.godnd.power.PowerBudget;
+import com.frederikam.godnd.sensors.AndroidSyntheticSource;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
+import java.util.Locale;
 
-public class MainActivity extends AppCompatActivity implements CompoundButton.OnCheckedChangeListener, Button.OnClickListener, Button.OnLongClickListener {
+public class MainActivity extends AppCompatActivity implements CompoundButton.OnCheckedChangeListener, Button.OnClickListener, Button.OnLongClickListener, MotionListener, AppState.Listener {
 
-    public static final String TAG = "com.frederikam.godnd";
+    public static final String TAG = AppLog.TAG;
     public static final int PERMISSION_REQUEST_DND_POLICY = 100;
+    // Same name as getPreferences() used to give us, so existing settings are kept
+    static final String PREFERENCES = "MainActivity";
+    // Time to let the toast show before opening the settings, so as to not confuse the user
+    private static final long POLICY_SETTINGS_DELAY = 500; // ms
 
     // http://stackoverflow.com/questions/2799097/how-can-i-detect-when-an-android-application-is-running-in-the-emulator
     public static final boolean IS_EMULATOR = Build.FINGERPRINT.startsWith("generic")
@@ -70,21 +83,49 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
 
     private static WeakReference<MainActivity> instance;
     public static boolean hasRequestedDndAccess = false;
-    private DNDHandler dndHandler = new DNDHandler();
     private TextView textStatus = null;
     private ToggleButton toggleButton = null;
     private Button passengerButton = null;
     private TextView passengerText = null;
-    private MotionManager motionManager = null;
+    private boolean subscribed = false;
+    private final Handler handler = new Handler();
+    private AsyncTask<Void, Void, Boolean> preferencesTask = null; // Cancelled if we are destroyed before it is done
+
+    // Renders at most once per frame
+    private boolean renderPending = false;
+    private final Choreographer.FrameCallback renderCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            renderPending = false;
+            render();
+        }
+    };
+
+    // What the views currently show, so that only changes are written to them
+    private boolean rendered = false;
+    private int renderedStatusVisibility;
+    private String renderedStatusText;
+    private int renderedPassengerVisibility;
+    private boolean renderedPassengerMode;
+    private boolean renderedEnabled;
+    private boolean renderedLoaded;
+
+    private final Runnable openPolicySettings = new Runnable() {
+        @Override
+        public void run() {
+            Intent intent = new Intent(android.provider.Settings.ACTION_NOTIFICATION_POLICY_ACCESS_SETTINGS);
+            startActivity(intent);
+        }
+    };
     private Button emulatorButton = null;
     private TextView warningMuteText = null;
-    private boolean isPassengerMode = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.beginSection("MainActivity.onCreate");
 
-        Log.i(TAG, "Creating activity: " + toString());
+        if (AppLog.isLoggable(AppLog.INFO)) AppLog.i("Creating activity: " + toString());
 
         instance = new WeakReference<>(this);
 
@@ -99,13 +140,54 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
         emulatorButton = (Button) findViewById(R.id.emulatorMotion);
         warningMuteText = (TextView) findViewById(R.id.warningMuteText);
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            handlePermissions();
-        } else {
-            startMotionSensors();
-        }
+        // Nothing but layout before the first frame. Sensors and preferences are dealt with after it
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTrace.markFirstFrame();
+                decorView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing()) return;
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                            handlePermissions();
+                        } else {
+                            startMotionSensors();
+                        }
+                    }
+                });
+                return true;
+            }
+        });
 
+        AppState state = GoDND.getAppState();
+        state.addListener(this);
+        if (!state.isLoaded()) {
+            loadPreferences();
+        }
         render();
+        StartupTrace.endSection();
+    }
+
+    @SuppressLint("StaticFieldLeak")
+    private void loadPreferences() {
+        // Until they are loaded, DND is left alone
+        preferencesTask = new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                return GoDND.getPreferences().getBoolean("isEnabled", true);
+            }
+
+            @Override
+            protected void onPostExecute(Boolean isEnabled) {
+                preferencesTask = null;
+                toggleButton.setPressed(isEnabled);
+                GoDND.getAppState().setEnabled(isEnabled);
+            }
+        };
+        preferencesTask.execute();
     }
 
     @Override
@@ -120,8 +202,6 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
 
         passengerButton.setOnClickListener(this);
         toggleButton.setOnCheckedChangeListener(this);
-        toggleButton.setPressed(getPreferences(MODE_PRIVATE).getBoolean("isEnabled", true));
-        toggleButton.setChecked(getPreferences(MODE_PRIVATE).getBoolean("isEnabled", true));
         emulatorButton.setOnLongClickListener(this);
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
@@ -135,78 +215,128 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
                 Toast toast = Toast.makeText(getApplicationContext(), "GoDND must have permission to access do not disturb.", Toast.LENGTH_LONG);
                 toast.show();
 
-                // Wait a moment to let the toast show, and to not confuse the user
-                synchronized (this) {
-                    try {
-                        Thread.sleep(500);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Got interrupted while sleeping", e);
-                    }
-                }
-
-                Intent intent = new Intent(android.provider.Settings.ACTION_NOTIFICATION_POLICY_ACCESS_SETTINGS);
-                startActivity(intent);
+                handler.postDelayed(openPolicySettings, POLICY_SETTINGS_DELAY);
             }
         }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // Don't pull the user into the settings if they have already left
+        handler.removeCallbacks(openPolicySettings);
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        GoDND.getAppState().removeListener(this);
+        // Our views are gone. The next activity to be created loads the preferences again.
+        if (preferencesTask != null) {
+            preferencesTask.cancel(false);
+            preferencesTask = null;
+        }
+        if (renderPending) {
+            Choreographer.getInstance().removeFrameCallback(renderCallback);
+            renderPending = false;
+        }
 
+        // The pipeline keeps running for as long as anyone else is subscribed
+        if (subscribed) {
+            GoDND.getMotionPipeline().unsubscribe(this);
+            subscribed = false;
+        }
     }
 
+    @Override
     public void onMotionChanged(boolean inMotion) {
-        isPassengerMode = false;
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                render();
-            }
-        });
+        // Called on the main thread
+        GoDND.getAppState().setInMotion(inMotion);
+    }
+
+    @Override
+    public void onStateChanged(AppState state) {
+        if (renderPending) return;
+        renderPending = true;
+        Choreographer.getInstance().postFrameCallback(renderCallback);
     }
 
     @Override
     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-        // Toggle button
-        getPreferences(MODE_PRIVATE).edit().putBoolean("isEnabled", isChecked).apply();
-        render();
+        // Toggle button. Ignore the change if it was us showing the loaded setting
+        AppState state = GoDND.getAppState();
+        if (!state.isLoaded() || state.isEnabled() == isChecked) return;
+
+        GoDND.getPreferences().edit().putBoolean("isEnabled", isChecked).apply();
+        state.setEnabled(isChecked);
     }
 
     @Override
     public void onClick(View v) {
+        if (v == emulatorButton) {
+            AndroidSyntheticSource source = GoDND.getMotionPipeline().getSyntheticSource();
+            if (source != null) {
+                source.restart();
+                Toast.makeText(this, "Restarted the motion script", Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+
         // Passenger button
-        isPassengerMode = !isPassengerMode;
-        ((Button) v).setText(isPassengerMode ? "Exit passenger mode" : "Enter passenger mode");
-        render();
+        AppState state = GoDND.getAppState();
+        state.setPassengerMode(!state.isPassengerMode());
     }
 
-    @SuppressLint("SetTextI18n")
+    /**
+     * Brings the views up to date with the app state, writing only to those that changed
+     */
     private void render() {
-        // Passenger mode, motion change or enable/disable
-        boolean inMotion = motionManager != null && motionManager.isInMotion();
-        boolean isEnabled = toggleButton.isChecked();
-
-        boolean enableDnd = false;
-
-        if (isEnabled) {
-            textStatus.setVisibility(View.VISIBLE);
-            passengerButton.setVisibility(inMotion ? View.VISIBLE : View.INVISIBLE);
-            passengerText.setVisibility(inMotion ? View.VISIBLE : View.INVISIBLE);
-
-            if(!inMotion) {
-                textStatus.setText("You are not in motion. Move around for a few seconds and" +
-                        " the app will enable do not disturb mode.");
-            } else if (!isPassengerMode) {
-                textStatus.setText("You are now in motion and incoming SMS and calls have been" +
-                        " disabled. Turn on passenger to temporarily disable the app.");
-                enableDnd = true;
-            } else {
-                textStatus.setText("Passenger mode enabled.");
-            }
+        AppState state = GoDND.getAppState();
+        boolean inMotion = state.isInMotion();
+        boolean isEnabled = state.isEnabled();
+
+        int statusVisibility = isEnabled ? View.VISIBLE : View.INVISIBLE;
+        int passengerVisibility = isEnabled && inMotion ? View.VISIBLE : View.INVISIBLE;
+        String statusText;
+        if (!inMotion) {
+            statusText = "You are not in motion. Move around for a few seconds and" +
+                    " the app will enable do not disturb mode.";
+        } else if (!state.isPassengerMode()) {
+            statusText = "You are now in motion and incoming SMS and calls have been" +
+                    " disabled. Turn on passenger to temporarily disable the app.";
         } else {
-            textStatus.setVisibility(View.INVISIBLE);
-            passengerButton.setVisibility(View.INVISIBLE);
-            passengerText.setVisibility(View.INVISIBLE);
+            statusText = "Passenger mode enabled.";
         }
 
-        dndHandler.handle(enableDnd);
+        if (!rendered || statusVisibility != renderedStatusVisibility) {
+            textStatus.setVisibility(statusVisibility);
+            renderedStatusVisibility = statusVisibility;
+        }
+        // Hidden text doesn't need to be kept up to date
+        if (isEnabled && (!rendered || !statusText.equals(renderedStatusText))) {
+            textStatus.setText(statusText);
+            renderedStatusText = statusText;
+        }
+        if (!rendered || passengerVisibility != renderedPassengerVisibility) {
+            passengerButton.setVisibility(passengerVisibility);
+            passengerText.setVisibility(passengerVisibility);
+            renderedPassengerVisibility = passengerVisibility;
+        }
+        if (!rendered || state.isPassengerMode() != renderedPassengerMode) {
+            passengerButton.setText(state.isPassengerMode() ? "Exit passenger mode" : "Enter passenger mode");
+            renderedPassengerMode = state.isPassengerMode();
+        }
+        if (!rendered || isEnabled != renderedEnabled || state.isLoaded() != renderedLoaded) {
+            // Until the setting is loaded, the toggle can't be used
+            toggleButton.setEnabled(state.isLoaded());
+            toggleButton.setChecked(isEnabled);
+            renderedEnabled = isEnabled;
+            renderedLoaded = state.isLoaded();
+        }
+
+        rendered = true;
     }
 
     @RequiresApi(api = Build.VERSION_CODES.M)
@@ -220,24 +350,18 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
     }
 
     private void startMotionSensors() {
-        if(motionManager != null) return;
+        if (subscribed) return;
 
-        // The emulator does not support our sensors :/
-        boolean emulatePhysics = false;
-
-        if(!IS_EMULATOR || !emulatePhysics) {
-            PackageManager pm = this.getPackageManager();
-            if(pm.hasSystemFeature(PackageManager.FEATURE_SENSOR_GYROSCOPE)) {
-                motionManager = new LinearMotionManager();
-            } else {
-                motionManager = new NonlinearMotionManager();
-            }
+        MotionPipeline pipeline = GoDND.getMotionPipeline();
+        pipeline.subscribe(this);
+        subscribed = true;
+        // We may have missed a change while nobody was listening
+        GoDND.getAppState().setInMotion(pipeline.isInMotion());
 
-        } else {
-            motionManager = new EmulatorMotionManager(emulatorButton);
+        if (pipeline.getSyntheticSource() != null) {
+            emulatorButton.setOnClickListener(this);
+            emulatorButton.setVisibility(View.VISIBLE);
         }
-
-        motionManager.start();
     }
 
     @Override
@@ -245,8 +369,8 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
 
-        for (int i = 0; i < permissions.length; i++) {
-            Log.i(TAG, "Permission request " + requestCode + " received: " + permissions[i] + " = " + grantResults[i]);
+        for (int i = 0; i < permissions.length && AppLog.isLoggable(AppLog.INFO); i++) {
+            AppLog.i("Permission request " + requestCode + " received: " + permissions[i] + " = " + grantResults[i]);
         }
 
         /*
@@ -260,11 +384,11 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
                     if(grantResults[i] == PackageManager.PERMISSION_GRANTED) {
                         cont = true;
                     } else {
-                        Log.e(TAG, "Not granted DND permission! Result: " + grantResults[i]);
+                        AppLog.e("Not granted DND permission! Result: " + grantResults[i]);
                     }
                     break;
                 default:
-                    Log.w(TAG, "Got unexpected permission result:" + perm + ":" + grantResults[i])
+                    AppLog.w("Got unexpected permission result:" + perm + ":" + grantResults[i])
                     break;
             }
         }*/
@@ -289,6 +413,45 @@ public class MainActivity extends AppCompatActivity implements CompoundButton.On
         return true;
     }
 
+    /**
+     * Dumps the metrics and the in-memory log, run with: adb shell dumpsys activity com.frederikam.godnd
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        StartupTrace.dump(prefix, writer);
+
+        MotionManager manager = GoDND.getMotionPipeline().getManager();
+        MotionStats stats = new MotionStats();
+        if (manager != null && manager.readStats(stats)) {
+            writer.println(prefix + "Velocity: " + stats);
+        }
+
+        SamplingScheduler scheduler = manager == null ? null : manager.getSamplingScheduler();
+        if (scheduler != null) {
+            writer.println(prefix + "Sampling period: " + scheduler.getSamplingPeriod() + " us");
+            int[] periods = scheduler.getSamplingPeriods();
+            long[] times = scheduler.getTimeAtSamplingPeriods();
+            for (int i = 0; i < periods.length; i++) {
+                writer.println(prefix + "  " + periods[i] + " us: " + times[i] / 1000000000 + " s");
+            }
+        }
+
+        PowerBudget budget = PowerBudget.get();
+        writer.println(prefix + "Power: level " + budget.getLevel() + ", " + String.format(Locale.US, "%.2f", budget.getHourlyEstimate())
+                + " of " + budget.getBudget() + " mAh/h");
+
+        writer.println(prefix + "History:");
+        GoDND.getSessionRecorder().dump(prefix + "  ", writer);
+
+        writer.println(prefix + "Metrics:");
+        MetricsRegistry.DEFAULT.dump(prefix + "  ", writer);
+
+        writer.println(prefix + "Recent log:");
+        AppLog.dump(writer);
+    }
+
     @Nullable
     public static MainActivity getInstance() {
         return instance.get();
@@ -0,0 +1,321 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.metrics.Counter;
+import com.frederikam.godnd.metrics.DetectionLatency;
+import com.frederikam.godnd.metrics.Histogram;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.physics.MotionListener;
+import com.frederikam.godnd.physics.MotionManager;
+import com.frederikam.godnd.physics.NonlinearMotionManager;
+import com.frederikam.godnd.physics.SamplingScheduler;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.SensorType;
+import com.frederikam.godnd.physics.TieredMotionDetector;
+import com.frederikam.godnd.physics.synthetic.MotionScript;
+import com.frederikam.godnd.physics.trace.TraceRecorder;
+import com.frederikam.godnd.power.PowerBudget;
+import com.frederikam.godnd.sensors.AndroidSensorSource;
+import com.frederikam.godnd.sensors.AndroidSyntheticSource;
+import com.frederikam.godnd.sensors.AndroidTriggerSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The single motion detection pipeline of the process. It runs as long as anything is subscribed to it, and all of
+ * its sensor listeners are unregistered once the last subscriber leaves. Stopping ends any motion, as we can no
+ * longer tell when it ends by itself.
+ * <p>
+ * All sensor events are handled on a dedicated thread. Changes of state cross over to the main thread, where the
+ * listeners are called, and changes that happen faster than the main thread can keep up with are coalesced into one.
+ * Subscribing and unsubscribing must happen on the main thread.
+ * <p>
+ * When the {@link PowerBudget} is exceeded we cap the sampling rate, and then switch the sensors off soon after we
+ * stop moving.
+ */
+public class MotionPipeline implements MotionListener {
+
+    // The emulator does not support our sensors :/ Plays a motion script through the real pipeline instead.
+    // Push your own with: adb push my.script /data/data/com.frederikam.godnd/files/motion.script
+    private static final boolean EMULATE_PHYSICS = false;
+    private static final String EMULATOR_SCRIPT = "still 30 s, walk 60 s, accelerate to 50 km/h, cruise 2 min, "
+            + "turn right 90 deg, cruise 1 min, stop at a light, accelerate to 80 km/h, cruise 3 min, stop, walk 30 s, "
+            + "still 2 min";
+    // Writes all sensor samples to the app's files dir so they can be replayed later
+    private static final boolean RECORD_SENSOR_TRACES = false;
+    // Lets a recreated activity take over without restarting the sensors
+    private static final long STOP_DELAY = 5000; // ms
+
+    private static final Counter DELIVERIES = MetricsRegistry.DEFAULT.counter("pipeline.deliveries");
+    private static final Counter COALESCED = MetricsRegistry.DEFAULT.counter("pipeline.coalesced");
+    // Time our listeners held the main thread for
+    private static final Histogram MAIN_THREAD_TIME = MetricsRegistry.DEFAULT.histogram("pipeline.main_thread_us", Histogram.LATENCY_BOUNDS_US);
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Handler sensorHandler;
+    private final CopyOnWriteArrayList<MotionListener> listeners = new CopyOnWriteArrayList<>();
+    private MotionManager manager = null;
+    private AndroidSyntheticSource syntheticSource = null;
+    private TieredMotionDetector tieredDetector = null; // Null if we don't have one
+    private int references = 0;
+    private int powerLevel = PowerBudget.LEVEL_FULL;
+
+    // Set on the sensor thread, delivered on the main thread
+    private volatile boolean latestInMotion = false;
+    private boolean deliveredInMotion = false;
+    private final AtomicBoolean deliveryPending = new AtomicBoolean(false);
+
+    private final Runnable stopRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (references != 0) return;
+            stop();
+            // Nobody is left to hear about it from us, and DND must not be left on with the sensors off
+            GoDND.getAppState().setInMotion(false);
+        }
+    };
+
+    private final Runnable deliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag first, so that a change made while we deliver gets posted again
+            deliveryPending.set(false);
+            deliver(latestInMotion);
+        }
+    };
+
+    MotionPipeline(Context context) {
+        this.context = context;
+
+        // Sensor work is light but frequent, and must never hold up a frame
+        HandlerThread thread = new HandlerThread("GoDND-sensors", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        sensorHandler = new Handler(thread.getLooper());
+
+        PowerBudget.get().setListener(new PowerBudget.Listener() {
+            @Override
+            public void onLevelChanged(final int level) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        setPowerLevel(level);
+                    }
+                });
+            }
+        });
+    }
+
+    public void subscribe(MotionListener listener) {
+        listeners.addIfAbsent(listener);
+        references++;
+        mainHandler.removeCallbacks(stopRunnable);
+        start();
+    }
+
+    public void unsubscribe(MotionListener listener) {
+        if (!listeners.remove(listener)) return;
+        references--;
+        if (references == 0) {
+            mainHandler.postDelayed(stopRunnable, STOP_DELAY);
+        }
+    }
+
+    private void start() {
+        if (manager == null) {
+            manager = createManager();
+            manager.setMotionListener(this);
+            applyPowerLevel();
+        }
+
+        // Registering with the sensor service is a binder call, so don't do it on the main thread either
+        final MotionManager manager = this.manager;
+        sensorHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (manager.isRunning()) return;
+                if (AppLog.isLoggable(AppLog.INFO)) AppLog.i("Starting " + manager.getName());
+                manager.start();
+                StartupTrace.markPipelineReady();
+            }
+        });
+    }
+
+    private void stop() {
+        final MotionManager manager = this.manager;
+        if (manager == null) return;
+
+        sensorHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!manager.isRunning()) return;
+                if (AppLog.isLoggable(AppLog.INFO)) AppLog.i("Stopping " + manager.getName());
+                manager.stop();
+                // Start over from not moving, rather than with whatever was decided before we stopped
+                manager.reset();
+            }
+        });
+    }
+
+    private void setPowerLevel(int level) {
+        if (level == powerLevel) return;
+        AppLog.log(AppLog.WARN, "Power level changed from {} to {}, budget is {} mAh/h",
+                powerLevel, level, PowerBudget.get().getBudget());
+        powerLevel = level;
+        if (manager == null) return;
+
+        applyPowerLevel();
+    }
+
+    private void applyPowerLevel() {
+        if (tieredDetector != null) {
+            tieredDetector.setQuietPeriod(powerLevel >= PowerBudget.LEVEL_LOW_POWER
+                    ? PowerBudget.LOW_POWER_QUIET_PERIOD : TieredMotionDetector.DEFAULT_QUIET_PERIOD);
+        }
+
+        SamplingScheduler scheduler = manager.getSamplingScheduler();
+        if (scheduler == null) return;
+        scheduler.setFastestSamplingPeriod(powerLevel >= PowerBudget.LEVEL_REDUCED_RATE
+                ? PowerBudget.REDUCED_SAMPLING_PERIOD : 0);
+    }
+
+    private MotionManager createManager() {
+        if (MainActivity.IS_EMULATOR && EMULATE_PHYSICS) {
+            syntheticSource = new AndroidSyntheticSource(sensorHandler, loadEmulatorScript());
+            return new LinearMotionManager(syntheticSource);
+        }
+
+        MotionManager sensorManager;
+        if (context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_SENSOR_GYROSCOPE)) {
+            sensorManager = new LinearMotionManager(createSensorSource(SensorType.LINEAR_ACCELERATION, SensorType.GYROSCOPE));
+        } else {
+            sensorManager = new NonlinearMotionManager(createSensorSource(SensorType.ACCELEROMETER, SensorType.GYROSCOPE));
+        }
+
+        // Only sample continuously once a low power sensor tells us we might be moving
+        tieredDetector = new TieredMotionDetector(sensorManager, new AndroidTriggerSource(context, sensorHandler, true));
+        return tieredDetector;
+    }
+
+    private MotionScript loadEmulatorScript() {
+        File file = new File(context.getFilesDir(), "motion.script");
+        if (!file.isFile()) return MotionScript.parse(EMULATOR_SCRIPT);
+
+        StringBuilder script = new StringBuilder();
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    script.append(line).append('\n');
+                }
+            } finally {
+                reader.close();
+            }
+            if (AppLog.isLoggable(AppLog.INFO)) AppLog.i("Playing motion script " + file);
+            return MotionScript.parse(script.toString());
+        } catch (IOException | IllegalArgumentException e) {
+            AppLog.e("Failed to load " + file + ", playing the default script", e);
+            return MotionScript.parse(EMULATOR_SCRIPT);
+        }
+    }
+
+    private SensorSource createSensorSource(int... sensorTypes) {
+        SensorSource source = new AndroidSensorSource(context, sensorHandler, sensorTypes);
+        if (!RECORD_SENSOR_TRACES) return source;
+
+        File dir = new File(context.getFilesDir(), "traces");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            AppLog.w("Unable to create trace directory " + dir);
+            return source;
+        }
+
+        File file = new File(dir, System.currentTimeMillis() + ".trace");
+        if (AppLog.isLoggable(AppLog.INFO)) AppLog.i("Recording sensor trace to " + file);
+        return new TraceRecorder(source, file);
+    }
+
+    @Override
+    public void onMotionChanged(boolean inMotion) {
+        latestInMotion = inMotion;
+        if (deliveryPending.compareAndSet(false, true)) {
+            mainHandler.post(deliverRunnable);
+        } else {
+            COALESCED.increment();
+        }
+    }
+
+    private void deliver(boolean inMotion) {
+        // The state may have flapped back while we were waiting for the main thread
+        if (inMotion == deliveredInMotion) return;
+        deliveredInMotion = inMotion;
+        DetectionLatency.get().markDelivered();
+
+        long start = System.nanoTime();
+        for (MotionListener listener : listeners) {
+            listener.onMotionChanged(inMotion);
+        }
+        long elapsed = System.nanoTime() - start;
+        DetectionLatency.get().markHandled();
+
+        DELIVERIES.increment();
+        MAIN_THREAD_TIME.record(elapsed / 1000);
+    }
+
+    /**
+     * @return whether we are in motion, as last delivered to the main thread
+     */
+    public boolean isInMotion() {
+        return deliveredInMotion;
+    }
+
+    /**
+     * @return the source playing the emulator's motion script, or null if we are using real sensors
+     */
+    public AndroidSyntheticSource getSyntheticSource() {
+        return syntheticSource;
+    }
+
+    /**
+     * @return the manager making our decisions, or null if the pipeline was never started
+     */
+    public MotionManager getManager() {
+        return manager;
+    }
+
+}
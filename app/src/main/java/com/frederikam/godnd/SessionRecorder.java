@@ -0,0 +1,161 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd;
+
+import android.os.SystemClock;
+
+import com.frederikam.godnd.history.Session;
+import com.frederikam.godnd.history.SessionLog;
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.physics.MotionManager;
+import com.frederikam.godnd.physics.VelocitySummary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link Session} to the history every time we stop being in motion. Sessions are put together on the main
+ * thread from the app state, and written on a background thread, so neither the sensor nor the main thread does I/O.
+ */
+class SessionRecorder implements AppState.Listener {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final File dir;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GoDND-history");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private SessionLog log = null; // Only touched on the executor
+
+    // Only touched on the main thread
+    private boolean inSession = false;
+    private long start; // ms since the epoch
+    private long lastUpdate; // ms, elapsed realtime
+    private boolean passengerMode;
+    private boolean dndWanted;
+    private long passengerTime; // ms
+    private long dndTime; // ms
+
+    SessionRecorder(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public void onStateChanged(AppState state) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (inSession) {
+            // Whatever we were doing lasted until now
+            if (passengerMode) passengerTime += now - lastUpdate;
+            if (dndWanted) dndTime += now - lastUpdate;
+        }
+        lastUpdate = now;
+        passengerMode = state.isPassengerMode();
+        dndWanted = state.isDndWanted();
+
+        if (!inSession && state.isInMotion()) {
+            inSession = true;
+            start = System.currentTimeMillis();
+            passengerTime = 0;
+            dndTime = 0;
+        } else if (inSession && !state.isInMotion()) {
+            inSession = false;
+            endSession();
+        }
+    }
+
+    private void endSession() {
+        MotionManager manager = GoDND.getMotionPipeline().getManager();
+        VelocitySummary velocity = manager == null ? null : manager.getLastSession();
+        long end = Math.max(start, System.currentTimeMillis());
+
+        final Session session = velocity == null
+                ? new Session(start, end, passengerTime, dndTime, 0, 0, 0)
+                : new Session(start, end, passengerTime, dndTime,
+                (float) velocity.getPeak(), (float) velocity.getMean(), velocity.getSamples());
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    open().append(session);
+                } catch (IOException | IllegalArgumentException e) {
+                    AppLog.e("Failed to record " + session, e);
+                }
+            }
+        });
+    }
+
+    private SessionLog open() throws IOException {
+        if (log == null) {
+            log = new SessionLog(dir);
+        }
+        return log;
+    }
+
+    /**
+     * Summarises the last week. Waits for the history thread, which is fine for a debugging dump.
+     */
+    void dump(final String prefix, final PrintWriter writer) {
+        final long now = System.currentTimeMillis();
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    final long[] totals = new long[3]; // Time in motion, as passenger, with DND
+                    int sessions;
+                    try {
+                        sessions = open().query(now - 7 * DAY, now, new SessionLog.Visitor() {
+                            @Override
+                            public void onSession(long start, long end, long passengerTime, long dndTime,
+                                                  float peakVelocity, float meanVelocity, int samples) {
+                                totals[0] += end - start;
+                                totals[1] += passengerTime;
+                                totals[2] += dndTime;
+                            }
+                        });
+                    } catch (IOException e) {
+                        writer.println(prefix + "History unavailable: " + e);
+                        return;
+                    }
+
+                    writer.println(prefix + "Last 7 days: " + sessions + " sessions, "
+                            + totals[0] / 60000 + " min in motion, " + totals[1] / 60000 + " min as passenger, "
+                            + totals[2] / 60000 + " min with DND");
+                }
+            }).get();
+        } catch (Exception e) {
+            writer.println(prefix + "History unavailable: " + e);
+        }
+    }
+}
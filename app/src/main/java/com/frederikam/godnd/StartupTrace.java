@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.frederikam.godnd.log.AppLog;
+
+import java.io.PrintWriter;
+
+/**
+ * Times the cold start, counted from when the application is created. Each milestone is only recorded the first time
+ * it is reached. Sections also show up in systrace on API 18 and later.
+ */
+public final class StartupTrace {
+
+    private static final long UNSET = -1;
+
+    private static volatile long start = UNSET; // ms, elapsed realtime
+    private static volatile long firstFrame = UNSET; // ms since start
+    private static volatile long pipelineReady = UNSET; // ms since start
+
+    private StartupTrace() {}
+
+    static void markStart() {
+        start = SystemClock.elapsedRealtime();
+    }
+
+    static void markFirstFrame() {
+        if (firstFrame != UNSET || start == UNSET) return;
+        firstFrame = SystemClock.elapsedRealtime() - start;
+        AppLog.log(AppLog.INFO, "First frame after {} ms", firstFrame);
+    }
+
+    static void markPipelineReady() {
+        if (pipelineReady != UNSET || start == UNSET) return;
+        pipelineReady = SystemClock.elapsedRealtime() - start;
+        AppLog.log(AppLog.INFO, "Motion pipeline ready after {} ms", pipelineReady);
+    }
+
+    static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Startup: first frame " + format(firstFrame) + ", pipeline ready " + format(pipelineReady));
+    }
+
+    private static String format(long time) {
+        return time == UNSET ? "pending" : time + " ms";
+    }
+}
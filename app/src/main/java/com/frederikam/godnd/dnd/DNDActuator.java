@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.dnd;
+
+import android.content.Context;
+
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.metrics.Counter;
+import com.frederikam.godnd.metrics.DetectionLatency;
+import com.frederikam.godnd.metrics.Histogram;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies DND changes on a background thread. Only the latest requested state matters, so requests that arrive while
+ * a change is pending are collapsed into it, and a quick enable, disable, enable costs at most one transition.
+ * <p>
+ * Requests must be made from the main thread.
+ */
+public class DNDActuator {
+
+    private static final Counter REQUESTS = MetricsRegistry.DEFAULT.counter("dnd.requests");
+    private static final Counter TRANSITIONS = MetricsRegistry.DEFAULT.counter("dnd.transitions");
+    // Time spent in binder calls to apply a transition
+    private static final Histogram TRANSITION_TIME = MetricsRegistry.DEFAULT.histogram("dnd.transition_us", Histogram.LATENCY_BOUNDS_US);
+
+    private final DNDHandler handler;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GoDND-dnd");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private volatile boolean desired = false;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    private final Runnable applyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag first, so that a request made while we apply gets scheduled again
+            pending.set(false);
+            apply(desired);
+        }
+    };
+
+    /**
+     * @param journal file to persist the user's settings to while DND is on
+     */
+    public DNDActuator(Context context, File journal) {
+        handler = new DNDHandler(context, new DNDJournal(journal));
+    }
+
+    /**
+     * Restores the user's settings if the process died while DND was on. This reads one small file, and only makes
+     * binder calls if there is something to restore, so it is meant to run during startup before any UI is shown.
+     * Must be called before any requests are made.
+     */
+    public void recover() {
+        handler.recover();
+    }
+
+    /**
+     * Requests that DND be enabled or disabled. Returns straight away.
+     */
+    public void request(boolean enable) {
+        if (desired == enable) return;
+        desired = enable;
+        REQUESTS.increment();
+        DetectionLatency.get().markRequested();
+
+        if (pending.compareAndSet(false, true)) {
+            executor.execute(applyRunnable);
+        }
+    }
+
+    private void apply(boolean enable) {
+        // We may have been flipped back while waiting
+        if (handler.isEnabled() == enable) return;
+
+        long start = System.nanoTime();
+        handler.handle(enable);
+        long elapsed = System.nanoTime() - start;
+
+        TRANSITIONS.increment();
+        TRANSITION_TIME.record(elapsed / 1000);
+        DetectionLatency.get().markApplied();
+
+        AppLog.log(AppLog.DEBUG, "DND transition to {} took {} us", enable ? 1 : 0, elapsed / 1000);
+    }
+}
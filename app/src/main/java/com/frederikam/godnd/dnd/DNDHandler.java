@@ -26,63 +26,139 @@ import android.app.NotificationManager;
 import android.content.Context;
 import android.media.AudioManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.RequiresApi;
-import android.util.Log;
 import android.widget.Toast;
 
-import com.frederikam.godnd.GoDND;
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.power.PowerBudget;
 
-import static android.content.ContentValues.TAG;
+import java.io.IOException;
 
-public class DNDHandler {
+/**
+ * Applies DND changes with blocking binder calls. Not thread safe, use it through {@link DNDActuator}.
+ */
+class DNDHandler {
 
+    private final Context context;
+    private final NotificationManager notificationManager;
+    private final AudioManager audioManager;
+    private final DNDJournal journal;
     private boolean enabled = false;
-    private int oldNotificationPolicy = -1;
-    private int oldVolumeRing = -1;
-    private int oldVolumeNotif = -1;
-    private int oldVibrationSettingRinger = -1;
-    private int oldVibrationSettingNotif = -1;
+    private DNDSettings oldSettings = null;
+
+    DNDHandler(Context context, DNDJournal journal) {
+        this.context = context;
+        this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        this.journal = journal;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
 
-    public void handle(boolean enable) {
+    void handle(boolean enable) {
         if(enabled == enable) return;
         enabled = enable;
 
+        if (enable) {
+            oldSettings = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? saveModern() : saveLegacy();
+            try {
+                journal.appendEnable(oldSettings);
+            } catch (IOException e) {
+                // Carry on, we just won't be able to restore the settings after a crash
+                AppLog.e("Failed to journal DND settings", e);
+            }
+        }
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            handleModern(enable);
+            handleModern(enable, oldSettings);
         } else {
-            handleLegacy(enable);
+            handleLegacy(enable, oldSettings);
+        }
+
+        if (!enable) {
+            appendDisable();
+        }
+    }
+
+    /**
+     * Puts back the user's settings if we died while DND was on. Must be called before anything else.
+     */
+    void recover() {
+        DNDSettings settings;
+        try {
+            settings = journal.recover();
+        } catch (IOException e) {
+            AppLog.e("Failed to read the DND journal", e);
+            return;
+        }
+        if (settings == null) return;
+
+        AppLog.w("DND was left on, restoring " + settings);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            handleModern(false, settings);
+        } else {
+            handleLegacy(false, settings);
+        }
+        appendDisable();
+    }
+
+    private void appendDisable() {
+        try {
+            journal.appendDisable();
+        } catch (IOException e) {
+            AppLog.e("Failed to journal DND restore", e);
         }
     }
 
     @RequiresApi(api = Build.VERSION_CODES.M)
-    private void handleModern(boolean enable) {
+    private DNDSettings saveModern() {
+        PowerBudget.get().onBinderCalls(1);
+        return new DNDSettings(notificationManager.getCurrentInterruptionFilter(), -1, -1, -1, -1);
+    }
+
+    private DNDSettings saveLegacy() {
+        PowerBudget.get().onBinderCalls(4);
+        return new DNDSettings(-1,
+                audioManager.getStreamVolume(AudioManager.STREAM_RING),
+                audioManager.getStreamVolume(AudioManager.STREAM_NOTIFICATION),
+                AudioManagerCompat.getVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_RINGER),
+                AudioManagerCompat.getVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_NOTIFICATION));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private void handleModern(boolean enable, DNDSettings old) {
+        PowerBudget.get().onBinderCalls(1);
         try {
-            NotificationManager mNotificationManager = (NotificationManager) GoDND.getContext().getSystemService(Context.NOTIFICATION_SERVICE);
             if (enable) {
-                oldNotificationPolicy = mNotificationManager.getCurrentInterruptionFilter();
-                mNotificationManager.setInterruptionFilter(NotificationManager.INTERRUPTION_FILTER_ALARMS);
+                notificationManager.setInterruptionFilter(NotificationManager.INTERRUPTION_FILTER_ALARMS);
             } else {
-                mNotificationManager.setInterruptionFilter(oldNotificationPolicy);
+                notificationManager.setInterruptionFilter(old.notificationPolicy);
             }
         } catch (SecurityException ex) {
-            Toast toast = Toast.makeText(GoDND.getContext(), "GoDND needs permission to access do not disturb. Please grant permissions in the settings menu for do not disturb.", Toast.LENGTH_LONG);
-            toast.show();
-            Log.e(TAG, "Failed to modify DND", ex);
+            AppLog.e("Failed to modify DND", ex);
+            // We are not on the main thread
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    Toast toast = Toast.makeText(context, "GoDND needs permission to access do not disturb. Please grant permissions in the settings menu for do not disturb.", Toast.LENGTH_LONG);
+                    toast.show();
+                }
+            });
         }
     }
 
     /**
      * Mute or unmute the ringer and notifications instead of going into "proper" DND
      * @param enable Whether to enable
+     * @param old The settings to restore when disabling
      */
-    private void handleLegacy(boolean enable) {
-        AudioManager audioManager = (AudioManager) GoDND.getContext().getSystemService(Context.AUDIO_SERVICE);
+    private void handleLegacy(boolean enable, DNDSettings old) {
+        PowerBudget.get().onBinderCalls(6);
         if (enable) {
-            oldVolumeRing = audioManager.getStreamVolume(AudioManager.STREAM_RING);
-            oldVolumeNotif = audioManager.getStreamVolume(AudioManager.STREAM_NOTIFICATION);
-            oldVibrationSettingRinger = AudioManagerCompat.getVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_RINGER);
-            oldVibrationSettingNotif = AudioManagerCompat.getVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_NOTIFICATION);
-
             audioManager.setStreamVolume(AudioManager.STREAM_RING, 0, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
             audioManager.setStreamVolume(AudioManager.STREAM_NOTIFICATION, 0, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
             audioManager.setStreamMute(AudioManager.STREAM_RING, true);
@@ -90,12 +166,12 @@ public class DNDHandler {
             AudioManagerCompat.setVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_RINGER, AudioManagerCompat.VIBRATE_SETTING_OFF);
             AudioManagerCompat.setVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_NOTIFICATION, AudioManagerCompat.VIBRATE_SETTING_OFF);
         } else {
-            audioManager.setStreamVolume(AudioManager.STREAM_RING, oldVolumeRing, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
-            audioManager.setStreamVolume(AudioManager.STREAM_NOTIFICATION, oldVolumeNotif, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+            audioManager.setStreamVolume(AudioManager.STREAM_RING, old.volumeRing, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
+            audioManager.setStreamVolume(AudioManager.STREAM_NOTIFICATION, old.volumeNotif, AudioManager.FLAG_REMOVE_SOUND_AND_VIBRATE);
             audioManager.setStreamMute(AudioManager.STREAM_RING, false);
             audioManager.setStreamMute(AudioManager.STREAM_NOTIFICATION, false);
-            AudioManagerCompat.setVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_RINGER, oldVibrationSettingRinger);
-            AudioManagerCompat.setVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_NOTIFICATION, oldVibrationSettingNotif);
+            AudioManagerCompat.setVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_RINGER, old.vibrationSettingRinger);
+            AudioManagerCompat.setVibrateSetting(audioManager, AudioManagerCompat.VIBRATE_TYPE_NOTIFICATION, old.vibrationSettingNotif);
         }
     }
 }
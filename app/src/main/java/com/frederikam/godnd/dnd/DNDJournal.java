@@ -0,0 +1,156 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.dnd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of DND transitions, so that the user's settings survive us being killed while DND is on.
+ * Every record is forced to disk before the transition it describes is applied. Records are fixed size, big endian:
+ * <pre>
+ * long time (ms), int type, int notification policy, int ring volume, int notification volume,
+ * int ringer vibration, int notification vibration, int crc32 of the preceding bytes
+ * </pre>
+ * A record torn by a crash fails its checksum and is ignored.
+ */
+class DNDJournal {
+
+    static final int ENABLE = 1;
+    static final int DISABLE = 2;
+
+    static final int RECORD_SIZE = 36;
+    // Once DND is off, the journal is emptied if it has grown past this
+    static final int MAX_RECORDS = 64;
+
+    private final File file;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private RandomAccessFile raf = null;
+    private FileChannel channel = null;
+
+    DNDJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the whole journal in one go
+     *
+     * @return the settings to restore if DND was left on, otherwise null
+     */
+    DNDSettings recover() throws IOException {
+        open();
+
+        long length = channel.size();
+        // Only whole records count, a torn tail is dropped on the next append
+        int usable = (int) Math.min(length - length % RECORD_SIZE, (long) MAX_RECORDS * RECORD_SIZE * 2);
+        ByteBuffer buffer = ByteBuffer.allocate(usable);
+        long position = length - length % RECORD_SIZE - usable;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+
+        int lastType = DISABLE;
+        DNDSettings settings = null;
+        byte[] bytes = buffer.array();
+        for (int offset = 0; offset + RECORD_SIZE <= buffer.limit(); offset += RECORD_SIZE) {
+            crc.reset();
+            crc.update(bytes, offset, RECORD_SIZE - 4);
+            if ((int) crc.getValue() != buffer.getInt(offset + RECORD_SIZE - 4)) continue;
+
+            lastType = buffer.getInt(offset + 8);
+            if (lastType == ENABLE) {
+                settings = new DNDSettings(
+                        buffer.getInt(offset + 12),
+                        buffer.getInt(offset + 16),
+                        buffer.getInt(offset + 20),
+                        buffer.getInt(offset + 24),
+                        buffer.getInt(offset + 28));
+            }
+        }
+
+        return lastType == ENABLE ? settings : null;
+    }
+
+    /**
+     * Must be written, and is forced to disk, before DND is enabled
+     */
+    void appendEnable(DNDSettings settings) throws IOException {
+        append(ENABLE, settings);
+    }
+
+    /**
+     * Written once the settings have been restored
+     */
+    void appendDisable() throws IOException {
+        append(DISABLE, null);
+
+        if (channel.size() >= (long) MAX_RECORDS * RECORD_SIZE) {
+            // Nothing left to restore, so none of the history is needed
+            channel.truncate(0);
+            channel.force(true);
+        }
+    }
+
+    private void append(int type, DNDSettings settings) throws IOException {
+        open();
+
+        record.clear();
+        record.putLong(System.currentTimeMillis());
+        record.putInt(type);
+        record.putInt(settings == null ? -1 : settings.notificationPolicy);
+        record.putInt(settings == null ? -1 : settings.volumeRing);
+        record.putInt(settings == null ? -1 : settings.volumeNotif);
+        record.putInt(settings == null ? -1 : settings.vibrationSettingRinger);
+        record.putInt(settings == null ? -1 : settings.vibrationSettingNotif);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        // Overwrites a torn record left by a crash, if any
+        long position = channel.size() - channel.size() % RECORD_SIZE;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        channel.force(false);
+    }
+
+    private void open() throws IOException {
+        if (channel != null) return;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    void close() throws IOException {
+        if (raf == null) return;
+        raf.close();
+        raf = null;
+        channel = null;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.dnd;
+
+/**
+ * The user's settings from before we enabled DND, which we must put back afterwards.
+ * Settings that don't apply to the way DND was enabled are -1.
+ */
+class DNDSettings {
+
+    final int notificationPolicy;
+    final int volumeRing;
+    final int volumeNotif;
+    final int vibrationSettingRinger;
+    final int vibrationSettingNotif;
+
+    DNDSettings(int notificationPolicy, int volumeRing, int volumeNotif,
+                int vibrationSettingRinger, int vibrationSettingNotif) {
+        this.notificationPolicy = notificationPolicy;
+        this.volumeRing = volumeRing;
+        this.volumeNotif = volumeNotif;
+        this.vibrationSettingRinger = vibrationSettingRinger;
+        this.vibrationSettingNotif = vibrationSettingNotif;
+    }
+
+    @Override
+    public String toString() {
+        return "DNDSettings{notificationPolicy=" + notificationPolicy + ", volumeRing=" + volumeRing
+                + ", volumeNotif=" + volumeNotif + ", vibrationSettingRinger=" + vibrationSettingRinger
+                + ", vibrationSettingNotif=" + vibrationSettingNotif + "}";
+    }
+}
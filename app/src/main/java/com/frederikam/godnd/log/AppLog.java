@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.log;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The app's logging facade. Records below the current level are dropped straight away, and accepted records are
+ * written to an in-memory ring without blocking. A background thread formats them and writes them to logcat and a log
+ * file.
+ * <p>
+ * Messages may contain up to three {@code {}} placeholders, which are filled in with the numeric arguments when
+ * the record is written out. Prefer this over string concatenation, as it doesn't allocate. A message that has to be
+ * concatenated is built before the level is checked, so guard it with {@link #isLoggable(int)}.
+ */
+public final class AppLog {
+
+    public static final String TAG = "com.frederikam.godnd";
+
+    // Same values as android.util.Log
+    public static final int VERBOSE = Log.VERBOSE;
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    private static final int RING_CAPACITY = 4096;
+
+    private static final LogRing ring = new LogRing(RING_CAPACITY);
+    private static volatile int level = INFO;
+    private static volatile LogDrainer drainer = null;
+
+    private AppLog() {}
+
+    /**
+     * Starts writing the ring out in the background
+     *
+     * @param logDir where to keep log files, or null to only write to logcat
+     */
+    public static synchronized void start(File logDir) {
+        if (drainer != null) return;
+        drainer = new LogDrainer(ring, logDir);
+        drainer.start();
+    }
+
+    public static void setLevel(int level) {
+        AppLog.level = level;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= AppLog.level;
+    }
+
+    public static void v(String message) {
+        log(VERBOSE, message, null, 0, 0, 0, 0);
+    }
+
+    public static void d(String message) {
+        log(DEBUG, message, null, 0, 0, 0, 0);
+    }
+
+    public static void i(String message) {
+        log(INFO, message, null, 0, 0, 0, 0);
+    }
+
+    public static void w(String message) {
+        log(WARN, message, null, 0, 0, 0, 0);
+    }
+
+    public static void w(String message, Throwable throwable) {
+        log(WARN, message, throwable, 0, 0, 0, 0);
+    }
+
+    public static void e(String message) {
+        log(ERROR, message, null, 0, 0, 0, 0);
+    }
+
+    public static void e(String message, Throwable throwable) {
+        log(ERROR, message, throwable, 0, 0, 0, 0);
+    }
+
+    public static void log(int level, String message, double arg0) {
+        log(level, message, null, 1, arg0, 0, 0);
+    }
+
+    public static void log(int level, String message, double arg0, double arg1) {
+        log(level, message, null, 2, arg0, arg1, 0);
+    }
+
+    public static void log(int level, String message, double arg0, double arg1, double arg2) {
+        log(level, message, null, 3, arg0, arg1, arg2);
+    }
+
+    private static void log(int level, String message, Throwable throwable,
+                            int argCount, double arg0, double arg1, double arg2) {
+        if (level < AppLog.level) return;
+
+        ring.write(System.currentTimeMillis(), level, message, throwable, argCount, arg0, arg1, arg2);
+
+        // Get problems onto disk quickly, in case we are about to crash
+        LogDrainer drainer = AppLog.drainer;
+        if (level >= WARN && drainer != null) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    /**
+     * Writes the newest records still in memory, regardless of whether they have been drained yet
+     */
+    public static void dump(PrintWriter writer) {
+        LogFormatter formatter = new LogFormatter();
+        formatter.writeSnapshot(ring, writer);
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.log;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread that empties the {@link LogRing} into logcat and a rotating log file.
+ */
+class LogDrainer extends Thread implements LogRing.Reader {
+
+    private static final long DRAIN_INTERVAL = 250L * 1000000; // ns
+    private static final long MAX_FILE_SIZE = 512 * 1024; // bytes, before the file is rotated
+    private static final String FILE_NAME = "godnd.log";
+
+    private final LogRing ring;
+    private final File logDir;
+    private final LogFormatter formatter = new LogFormatter();
+    private final double[] scratch = new double[LogRing.MAX_ARGS];
+    private boolean fileEnabled;
+    private Writer file = null;
+    private long fileSize = 0;
+    private long reportedLost = 0;
+
+    LogDrainer(LogRing ring, File logDir) {
+        this.ring = ring;
+        this.logDir = logDir;
+        this.fileEnabled = logDir != null;
+        setName("LogDrainer");
+        setDaemon(true);
+        setPriority(MIN_PRIORITY);
+    }
+
+    @Override
+    public void run() {
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            LockSupport.parkNanos(this, DRAIN_INTERVAL);
+
+            if (ring.drain(this, scratch) == 0) continue;
+
+            long lost = ring.getLost();
+            if (lost != reportedLost) {
+                Log.w(AppLog.TAG, "Log ring overflowed, " + (lost - reportedLost) + " records were lost");
+                reportedLost = lost;
+            }
+
+            if (file != null) {
+                try {
+                    file.flush();
+                } catch (IOException e) {
+                    closeFile(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onRecord(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args) {
+        Log.println(level, AppLog.TAG, formatter.formatMessage(message, throwable, argCount, args));
+
+        if (!fileEnabled) return;
+        try {
+            if (file == null || fileSize > MAX_FILE_SIZE) {
+                openFile();
+            }
+            String line = formatter.formatLine(timestamp, level, message, throwable, argCount, args);
+            file.write(line);
+            file.write('\n');
+            fileSize += line.length() + 1;
+        } catch (IOException e) {
+            closeFile(e);
+        }
+    }
+
+    private void openFile() throws IOException {
+        if (!logDir.isDirectory() && !logDir.mkdirs()) {
+            throw new IOException("Unable to create " + logDir);
+        }
+
+        File current = new File(logDir, FILE_NAME);
+        if (file != null) {
+            file.close();
+            file = null;
+            // Keep a single old file around
+            File old = new File(logDir, FILE_NAME + ".1");
+            if (!current.renameTo(old)) {
+                throw new IOException("Unable to rotate " + current);
+            }
+        }
+
+        fileSize = current.length();
+        file = new FileWriter(current, true);
+    }
+
+    /**
+     * Gives up on the log file, logcat still works
+     */
+    private void closeFile(IOException cause) {
+        Log.e(AppLog.TAG, "Failed to write log file", cause);
+        try {
+            if (file != null) file.close();
+        } catch (IOException ignored) {
+        }
+        file = null;
+        fileEnabled = false;
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Turns records from a {@link LogRing} into text. Not thread safe.
+ */
+class LogFormatter implements LogRing.Reader {
+
+    private static final char[] LEVELS = {'?', '?', 'V', 'D', 'I', 'W', 'E', 'A'};
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+    private final Date date = new Date();
+    private final StringBuilder builder = new StringBuilder(256);
+    private final double[] scratch = new double[LogRing.MAX_ARGS];
+    private PrintWriter target = null;
+
+    /**
+     * Formats just the message of a record, filling in its arguments
+     */
+    String formatMessage(String message, Throwable throwable, int argCount, double[] args) {
+        builder.setLength(0);
+        appendMessage(message, argCount, args);
+        if (throwable != null) {
+            StringWriter stackTrace = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(stackTrace));
+            builder.append('\n').append(stackTrace);
+        }
+        return builder.toString();
+    }
+
+    String formatLine(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args) {
+        String formatted = formatMessage(message, throwable, argCount, args);
+        date.setTime(timestamp);
+        return dateFormat.format(date) + ' ' + (level < LEVELS.length ? LEVELS[level] : '?') + ' ' + formatted;
+    }
+
+    void writeSnapshot(LogRing ring, PrintWriter writer) {
+        target = writer;
+        ring.snapshot(this, scratch);
+        target = null;
+    }
+
+    @Override
+    public void onRecord(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args) {
+        target.println(formatLine(timestamp, level, message, throwable, argCount, args));
+    }
+
+    private void appendMessage(String message, int argCount, double[] args) {
+        int arg = 0;
+        int start = 0;
+        int placeholder;
+        while (arg < argCount && (placeholder = message.indexOf("{}", start)) >= 0) {
+            builder.append(message, start, placeholder);
+            appendNumber(args[arg++]);
+            start = placeholder + 2;
+        }
+        builder.append(message, start, message.length());
+    }
+
+    private void appendNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            builder.append((long) value);
+        } else {
+            builder.append(value);
+        }
+    }
+
+}
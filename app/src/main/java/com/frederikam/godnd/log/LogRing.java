@@ -0,0 +1,176 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.log;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Preallocated, lock-free ring of log records. Any number of threads may write, while a single reader drains it.
+ * Writers never wait: if the reader falls behind, the oldest records are overwritten, and a writer that finds its slot
+ * still being written by one it has lapped gives its record up.
+ * <p>
+ * A record is stored as primitives and references to the (usually constant) message and throwable, so writing one
+ * doesn't allocate. Formatting is left to whoever reads the ring.
+ */
+class LogRing {
+
+    static final int MAX_ARGS = 3;
+
+    private static final long WRITING = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong(0); // Sequence number of the next record to be claimed
+    // Sequence number of the record in each slot, once it has been completely written, or WRITING while it is written
+    private final AtomicLongArray published;
+    // Sequence number of the latest record given up on for each slot
+    private final AtomicLongArray skipped;
+
+    // The slots are volatile, so the payload can't be read outside the checks of the published sequence, as with
+    // StatsSeqlock. Doubles are stored by their bits.
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray levels;
+    private final AtomicReferenceArray<String> messages;
+    private final AtomicReferenceArray<Throwable> throwables;
+    private final AtomicIntegerArray argCounts;
+    private final AtomicLongArray args;
+
+    private long readSequence = 0;
+    private long lost = 0;
+
+    LogRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        published = new AtomicLongArray(capacity);
+        skipped = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+            skipped.set(i, -1);
+        }
+        timestamps = new AtomicLongArray(capacity);
+        levels = new AtomicIntegerArray(capacity);
+        messages = new AtomicReferenceArray<>(capacity);
+        throwables = new AtomicReferenceArray<>(capacity);
+        argCounts = new AtomicIntegerArray(capacity);
+        args = new AtomicLongArray(capacity * MAX_ARGS);
+    }
+
+    void write(long timestamp, int level, String message, Throwable throwable,
+               int argCount, double arg0, double arg1, double arg2) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        // Make the slot unreadable while we write it. Only one writer may hold it, or the payload could be torn.
+        long previous = published.get(slot);
+        if (previous == WRITING || previous > sequence || !published.compareAndSet(slot, previous, WRITING)) {
+            skipped.set(slot, sequence);
+            return;
+        }
+
+        timestamps.set(slot, timestamp);
+        levels.set(slot, level);
+        messages.set(slot, message);
+        throwables.set(slot, throwable);
+        argCounts.set(slot, argCount);
+        args.set(slot * MAX_ARGS, Double.doubleToRawLongBits(arg0));
+        args.set(slot * MAX_ARGS + 1, Double.doubleToRawLongBits(arg1));
+        args.set(slot * MAX_ARGS + 2, Double.doubleToRawLongBits(arg2));
+        published.set(slot, sequence);
+    }
+
+    interface Reader {
+        void onRecord(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args);
+    }
+
+    /**
+     * Passes every record written since the last drain to the reader. Only one thread may drain at a time.
+     *
+     * @return the number of records drained
+     */
+    int drain(Reader reader, double[] scratch) {
+        long end = cursor.get();
+        if (end - readSequence > capacity) {
+            // We were lapped, skip what was overwritten
+            lost += end - capacity - readSequence;
+            readSequence = end - capacity;
+        }
+
+        int drained = 0;
+        while (readSequence < end) {
+            int result = read(readSequence, reader, scratch);
+            if (result == NOT_YET_PUBLISHED) break; // A writer is still busy with this slot, try again next time
+            if (result == LOST) lost++;
+            else drained++;
+            readSequence++;
+        }
+        return drained;
+    }
+
+    /**
+     * Passes the newest records still in the ring to the reader, without affecting {@link #drain}
+     */
+    void snapshot(Reader reader, double[] scratch) {
+        long end = cursor.get();
+        for (long sequence = Math.max(0, end - capacity); sequence < end; sequence++) {
+            read(sequence, reader, scratch);
+        }
+    }
+
+    private static final int READ = 0;
+    private static final int NOT_YET_PUBLISHED = 1;
+    private static final int LOST = 2;
+
+    private int read(long sequence, Reader reader, double[] scratch) {
+        int slot = (int) (sequence & mask);
+        long before = published.get(slot);
+        if (before < sequence) return skipped.get(slot) == sequence ? LOST : NOT_YET_PUBLISHED;
+        if (before > sequence) return LOST;
+
+        long timestamp = timestamps.get(slot);
+        int level = levels.get(slot);
+        String message = messages.get(slot);
+        Throwable throwable = throwables.get(slot);
+        int argCount = argCounts.get(slot);
+        for (int i = 0; i < MAX_ARGS; i++) {
+            scratch[i] = Double.longBitsToDouble(args.get(slot * MAX_ARGS + i));
+        }
+
+        // If a writer lapped us while we were copying, the copy may be torn
+        if (published.get(slot) != sequence) return LOST;
+
+        reader.onRecord(timestamp, level, message, throwable, argCount, scratch);
+        return READ;
+    }
+
+    /**
+     * @return how many records were overwritten before they could be drained
+     */
+    long getLost() {
+        return lost;
+    }
+
+}
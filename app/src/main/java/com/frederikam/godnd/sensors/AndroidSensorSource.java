@@ -0,0 +1,171 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sensors;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.SensorType;
+import com.frederikam.godnd.power.PowerBudget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds events from some of the device's sensors into the pipeline. Sensors the device doesn't have are skipped.
+ * Events are delivered on the looper of the given handler, which should never be the main looper.
+ */
+public class AndroidSensorSource implements SensorSource, SensorEventListener {
+
+    private static final int MAX_REPORT_LATENCY = 500 * 1000; // us, the interval at which the trackers keep samples
+
+    private final SensorManager sensorManager;
+    private final Handler handler;
+    private final List<Sensor> sensors = new ArrayList<>();
+    private volatile SampleListener listener = null;
+    private boolean batching = false;
+    private int samplingPeriod = SensorManager.SENSOR_DELAY_GAME;
+
+    /**
+     * @param handler the handler whose thread receives the sensor events
+     * @param sensorTypes one or more of {@link SensorType}
+     */
+    public AndroidSensorSource(Context context, Handler handler, int... sensorTypes) {
+        this.handler = handler;
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        for (int type : sensorTypes) {
+            Sensor sensor = sensorManager.getDefaultSensor(type);
+            if (sensor != null) {
+                sensors.add(sensor);
+            }
+        }
+    }
+
+    @Override
+    public void start(SampleListener listener) {
+        this.listener = listener;
+        registerAll();
+    }
+
+    @Override
+    public void setSamplingPeriod(int samplingPeriodUs) {
+        if (samplingPeriod == samplingPeriodUs) return;
+        samplingPeriod = samplingPeriodUs;
+
+        // Listeners can only change their rate by registering again
+        if (listener != null) {
+            sensorManager.unregisterListener(this);
+            registerAll();
+        }
+    }
+
+    private void registerAll() {
+        batching = !sensors.isEmpty();
+        long deliveryPeriod = MAX_REPORT_LATENCY; // us, the shortest of them all
+        for (Sensor sensor : sensors) {
+            long latency = register(sensor, samplingPeriod, MAX_REPORT_LATENCY);
+            batching &= latency > 0;
+            deliveryPeriod = Math.min(deliveryPeriod, latency > 0 ? latency : samplingPeriod);
+        }
+        PowerBudget.get().setSensorCurrent(getCurrent(), sensors.isEmpty() ? 0 : deliveryPeriod);
+    }
+
+    @Override
+    public void stop() {
+        sensorManager.unregisterListener(this);
+        listener = null;
+        PowerBudget.get().setSensorCurrent(0, 0);
+    }
+
+    /**
+     * @return the combined current our sensors are rated for while in use, in mA
+     */
+    public float getPower() {
+        float power = 0;
+        for (Sensor sensor : sensors) {
+            power += sensor.getPower();
+        }
+        return power;
+    }
+
+    /**
+     * @return the combined current our sensors are expected to draw at our sampling rate, in mA
+     */
+    private double getCurrent() {
+        double current = 0;
+        for (Sensor sensor : sensors) {
+            current += sensor.getPower() * PowerBudget.dutyCycle(sensor.getMinDelay(), samplingPeriod);
+        }
+        return current;
+    }
+
+    /**
+     * Registers this source, letting the sensor hub queue events in its FIFO if it has one.
+     * Batched events are delivered back to back, so they must be timed by {@link SensorEvent#timestamp}.
+     *
+     * @return the report latency in us if the events are being batched, or 0 if they aren't
+     */
+    private long register(Sensor sensor, int samplingPeriodUs, int maxReportLatencyUs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && sensor.getFifoMaxEventCount() > 0) {
+            int fifoSize = sensor.getFifoReservedEventCount() > 0
+                    ? sensor.getFifoReservedEventCount() : sensor.getFifoMaxEventCount();
+            // The latency must be short enough that the FIFO doesn't overflow in the meantime
+            long latency = Math.min(maxReportLatencyUs, (long) fifoSize * samplingPeriodUs);
+
+            if (sensorManager.registerListener(this, sensor, samplingPeriodUs, (int) latency, handler)) {
+                return latency;
+            }
+        }
+
+        sensorManager.registerListener(this, sensor, samplingPeriodUs, handler);
+        return 0;
+    }
+
+    /**
+     * @return true if all of the sensors are being batched
+     */
+    public boolean isBatching() {
+        return batching;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        SampleListener listener = this.listener;
+        if (listener == null) return;
+
+        // Our SensorType constants mirror the ones in Sensor
+        listener.onSample(event.timestamp, event.sensor.getType(), event.values[0], event.values[1], event.values[2]);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // Ignore
+    }
+}
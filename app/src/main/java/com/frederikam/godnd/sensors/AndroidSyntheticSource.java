@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sensors;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.synthetic.MotionScript;
+import com.frederikam.godnd.physics.synthetic.SyntheticSensorSource;
+
+/**
+ * Plays a motion script in real time, for emulators without our sensors. Samples are delivered in batches on the
+ * looper of the given handler, the way a sensor hub with a FIFO would deliver them. The script loops forever.
+ */
+public class AndroidSyntheticSource implements SensorSource {
+
+    private static final long BATCH_INTERVAL = 100; // ms
+
+    private final Handler handler;
+    private final SyntheticSensorSource source;
+    private long lastAdvance; // ns of elapsed realtime
+
+    private final Runnable advanceRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtime() * 1000000L;
+            source.advance(now - lastAdvance);
+            lastAdvance = now;
+            handler.postDelayed(this, BATCH_INTERVAL);
+        }
+    };
+
+    /**
+     * @param handler the handler whose thread receives the samples
+     */
+    public AndroidSyntheticSource(Handler handler, MotionScript script) {
+        this.handler = handler;
+        this.source = new SyntheticSensorSource(script, false, System.nanoTime());
+        source.setLooping(true);
+    }
+
+    @Override
+    public void start(SampleListener listener) {
+        source.start(listener);
+        lastAdvance = SystemClock.elapsedRealtime() * 1000000L;
+        handler.removeCallbacks(advanceRunnable);
+        handler.postDelayed(advanceRunnable, BATCH_INTERVAL);
+    }
+
+    @Override
+    public void stop() {
+        handler.removeCallbacks(advanceRunnable);
+        source.stop();
+    }
+
+    @Override
+    public void setSamplingPeriod(int samplingPeriodUs) {
+        source.setSamplingPeriod(samplingPeriodUs);
+    }
+
+    /**
+     * Starts the script over from any thread
+     */
+    public void restart() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                source.restart();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sensors;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.Build;
+import android.os.Handler;
+
+import com.frederikam.godnd.log.AppLog;
+import com.frederikam.godnd.physics.TriggerSource;
+
+/**
+ * Triggers on the significant motion sensor, and optionally on the step detector. Both are handled by the sensor hub
+ * while the application processor sleeps. Devices that have neither aren't {@link #isAvailable() available}, so the
+ * full pipeline simply keeps running on them.
+ * <p>
+ * The listener is called on the looper of the given handler.
+ */
+public class AndroidTriggerSource implements TriggerSource, SensorEventListener {
+
+    private final SensorManager sensorManager;
+    private final Handler handler;
+    private final Sensor significantMotion;
+    private final Sensor stepDetector;
+    private final TriggerEventListener triggerListener;
+    private Listener listener = null;
+
+    private final Runnable fireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            fire();
+        }
+    };
+
+    /**
+     * @param handler the handler whose thread the listener is called on
+     * @param useStepDetector also trigger on the first step, which fires sooner than significant motion
+     */
+    public AndroidTriggerSource(Context context, Handler handler, boolean useStepDetector) {
+        this.handler = handler;
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            significantMotion = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+            triggerListener = significantMotion == null ? null : createTriggerListener();
+        } else {
+            significantMotion = null;
+            triggerListener = null;
+        }
+
+        if (useStepDetector && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            stepDetector = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR);
+        } else {
+            stepDetector = null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private TriggerEventListener createTriggerListener() {
+        return new TriggerEventListener() {
+            @Override
+            public void onTrigger(TriggerEvent event) {
+                // Trigger events always arrive on the main looper
+                handler.post(fireRunnable);
+            }
+        };
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return significantMotion != null || stepDetector != null;
+    }
+
+    @Override
+    public void arm(Listener listener) {
+        synchronized (this) {
+            this.listener = listener;
+        }
+
+        boolean armed = false;
+        if (triggerListener != null) {
+            armed = requestSignificantMotion();
+        }
+        if (stepDetector != null) {
+            armed |= sensorManager.registerListener(this, stepDetector, SensorManager.SENSOR_DELAY_NORMAL, handler);
+        }
+
+        if (!armed) {
+            // Fire from the handler, as the caller is still busy switching the pipeline off
+            AppLog.w("Unable to arm the low power motion trigger, running the full pipeline");
+            handler.post(fireRunnable);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private boolean requestSignificantMotion() {
+        return sensorManager.requestTriggerSensor(triggerListener, significantMotion);
+    }
+
+    @Override
+    public void disarm() {
+        synchronized (this) {
+            listener = null;
+        }
+
+        if (triggerListener != null) {
+            cancelSignificantMotion();
+        }
+        if (stepDetector != null) {
+            sensorManager.unregisterListener(this);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void cancelSignificantMotion() {
+        sensorManager.cancelTriggerSensor(triggerListener, significantMotion);
+    }
+
+    private void fire() {
+        Listener listener;
+        synchronized (this) {
+            listener = this.listener;
+            this.listener = null;
+        }
+        if (listener == null) return;
+
+        // Whichever fired first, the other one is no longer needed
+        disarm();
+        listener.onTrigger();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        // A step
+        fire();
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // Ignore
+    }
+}
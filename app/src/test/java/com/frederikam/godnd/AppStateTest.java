@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AppStateTest {
+
+    @Test
+    public void notifiesOnlyOnChange() throws Exception {
+        AppState state = new AppState();
+        final int[] changes = {0};
+        state.addListener(new AppState.Listener() {
+            @Override
+            public void onStateChanged(AppState state) {
+                changes[0]++;
+            }
+        });
+
+        state.setInMotion(false);
+        state.setPassengerMode(false);
+        assertEquals(0, changes[0]);
+
+        // Loading counts as a change even if the value is the default
+        state.setEnabled(false);
+        state.setEnabled(false);
+        assertEquals(1, changes[0]);
+
+        state.setInMotion(true);
+        state.setInMotion(true);
+        assertEquals(2, changes[0]);
+    }
+
+    @Test
+    public void dndNeedsEveryCondition() throws Exception {
+        AppState state = new AppState();
+        state.setInMotion(true);
+        assertFalse(state.isDndWanted());
+
+        state.setEnabled(true);
+        assertTrue(state.isDndWanted());
+
+        state.setPassengerMode(true);
+        assertFalse(state.isDndWanted());
+
+        // A new trip ends passenger mode
+        state.setInMotion(false);
+        state.setInMotion(true);
+        assertFalse(state.isPassengerMode());
+        assertTrue(state.isDndWanted());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.dnd;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class DNDJournalTest {
+
+    @Test
+    public void recoversSettingsLeftEnabled() throws Exception {
+        File file = File.createTempFile("dnd", ".journal");
+        file.deleteOnExit();
+
+        DNDJournal journal = new DNDJournal(file);
+        journal.appendEnable(new DNDSettings(1, 2, 3, 4, 5));
+        journal.appendDisable();
+        journal.appendEnable(new DNDSettings(6, 7, 8, 9, 10));
+        journal.close();
+
+        DNDSettings settings = new DNDJournal(file).recover();
+        assertNotNull(settings);
+        assertEquals(6, settings.notificationPolicy);
+        assertEquals(10, settings.vibrationSettingNotif);
+    }
+
+    @Test
+    public void nothingToRecoverOnceDisabled() throws Exception {
+        File file = File.createTempFile("dnd", ".journal");
+        file.deleteOnExit();
+
+        assertNull(new DNDJournal(file).recover());
+
+        DNDJournal journal = new DNDJournal(file);
+        journal.appendEnable(new DNDSettings(1, 2, 3, 4, 5));
+        journal.appendDisable();
+        journal.close();
+
+        assertNull(new DNDJournal(file).recover());
+    }
+
+    @Test
+    public void ignoresTornRecords() throws Exception {
+        File file = File.createTempFile("dnd", ".journal");
+        file.deleteOnExit();
+
+        DNDJournal journal = new DNDJournal(file);
+        journal.appendEnable(new DNDSettings(1, 2, 3, 4, 5));
+        journal.appendDisable();
+        journal.close();
+
+        // Crash halfway through writing the disable record
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(DNDJournal.RECORD_SIZE + DNDJournal.RECORD_SIZE / 2);
+        raf.close();
+
+        journal = new DNDJournal(file);
+        DNDSettings settings = journal.recover();
+        assertNotNull(settings);
+        assertEquals(1, settings.notificationPolicy);
+
+        // The next record replaces the torn one
+        journal.appendDisable();
+        journal.close();
+        assertEquals(2 * DNDJournal.RECORD_SIZE, file.length());
+        assertNull(new DNDJournal(file).recover());
+    }
+
+    @Test
+    public void compactsOnceDisabled() throws Exception {
+        File file = File.createTempFile("dnd", ".journal");
+        file.deleteOnExit();
+
+        DNDJournal journal = new DNDJournal(file);
+        for (int i = 0; i < DNDJournal.MAX_RECORDS; i++) {
+            journal.appendEnable(new DNDSettings(i, i, i, i, i));
+            journal.appendDisable();
+            assertTrue(file.length() < DNDJournal.MAX_RECORDS * DNDJournal.RECORD_SIZE);
+        }
+        journal.close();
+
+        assertNull(new DNDJournal(file).recover());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.log;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LogRingTest {
+
+    @Test
+    public void drainsRecordsInOrder() throws Exception {
+        LogRing ring = new LogRing(16);
+        for (int i = 0; i < 10; i++) {
+            ring.write(i, AppLog.INFO, "Record {}", null, 1, i, 0, 0);
+        }
+
+        final long[] next = {0};
+        int drained = ring.drain(new LogRing.Reader() {
+            @Override
+            public void onRecord(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args) {
+                assertEquals(next[0], timestamp);
+                assertEquals(next[0], (long) args[0]);
+                next[0]++;
+            }
+        }, new double[LogRing.MAX_ARGS]);
+
+        assertEquals(10, drained);
+        assertEquals(0, ring.getLost());
+    }
+
+    @Test
+    public void overflowDropsOldestRecords() throws Exception {
+        LogRing ring = new LogRing(8);
+        for (int i = 0; i < 20; i++) {
+            ring.write(i, AppLog.INFO, "Record", null, 0, 0, 0, 0);
+        }
+
+        final long[] first = {-1};
+        int drained = ring.drain(new LogRing.Reader() {
+            @Override
+            public void onRecord(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args) {
+                if (first[0] < 0) first[0] = timestamp;
+            }
+        }, new double[LogRing.MAX_ARGS]);
+
+        assertEquals(8, drained);
+        assertEquals(12, ring.getLost());
+        assertEquals(12, first[0]);
+    }
+
+    @Test
+    public void concurrentWritersNeverProduceTornRecords() throws Exception {
+        final LogRing ring = new LogRing(1024);
+        final int writers = 4;
+        final int perWriter = 200000;
+        final CountDownLatch done = new CountDownLatch(writers);
+
+        for (int w = 0; w < writers; w++) {
+            final int id = w;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perWriter; i++) {
+                        // Every argument encodes the same value, so a torn record is easy to spot
+                        ring.write(i, id, "Record", null, 3, i, i, i);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        final long[] seen = {0};
+        LogRing.Reader reader = new LogRing.Reader() {
+            @Override
+            public void onRecord(long timestamp, int level, String message, Throwable throwable, int argCount, double[] args) {
+                assertEquals(timestamp, (long) args[0]);
+                assertEquals(timestamp, (long) args[1]);
+                assertEquals(timestamp, (long) args[2]);
+                seen[0]++;
+            }
+        };
+        double[] scratch = new double[LogRing.MAX_ARGS];
+        while (done.getCount() > 0) {
+            ring.drain(reader, scratch);
+        }
+        ring.drain(reader, scratch);
+
+        assertEquals(writers * perWriter, seen[0] + ring.getLost());
+    }
+}
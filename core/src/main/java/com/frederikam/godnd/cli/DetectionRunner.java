@@ -0,0 +1,247 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.cli;
+
+import com.frederikam.godnd.metrics.MetricsRegistry;
+import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.physics.MotionConfig;
+import com.frederikam.godnd.physics.MotionListener;
+import com.frederikam.godnd.physics.MotionManager;
+import com.frederikam.godnd.physics.NonlinearMotionManager;
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.synthetic.MotionScript;
+import com.frederikam.godnd.physics.synthetic.SyntheticSensorSource;
+import com.frederikam.godnd.physics.trace.ReplaySensorSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Pushes sample files through the detection engine as fast as possible, and prints every decision along with the
+ * throughput. Files ending in ".trace" are traces recorded by the app, anything else is read as a {@link MotionScript}.
+ * <p>
+ * Usage: DetectionRunner [--nonlinear] [--config high,low,history,sleep[,decimate]] [--rate hz] [--metrics] file...
+ */
+public class DetectionRunner {
+
+    private static final String USAGE = "Usage: DetectionRunner [--nonlinear] [--config high,low,history,sleep[,decimate]] "
+            + "[--rate hz] [--metrics] file...";
+
+    private final boolean nonlinear;
+    private final MotionConfig config;
+    private final int rate; // Hz for scripts, or 0 to follow the managers
+    private final PrintWriter out;
+
+    DetectionRunner(boolean nonlinear, MotionConfig config, int rate, PrintWriter out) {
+        this.nonlinear = nonlinear;
+        this.config = config;
+        this.rate = rate;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean nonlinear = false;
+        MotionConfig config = null;
+        int rate = 0;
+        boolean metrics = false;
+        List<File> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--nonlinear")) {
+                    nonlinear = true;
+                } else if (args[i].equals("--config")) {
+                    config = parseConfig(args[++i]);
+                } else if (args[i].equals("--rate")) {
+                    rate = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--metrics")) {
+                    metrics = true;
+                } else if (args[i].startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                } else {
+                    files.add(new File(args[i]));
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e.getMessage() == null ? USAGE : e.getMessage() + "\n" + USAGE);
+            System.exit(2);
+        }
+        if (files.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        if (config == null) {
+            config = nonlinear ? MotionConfig.NONLINEAR : MotionConfig.LINEAR;
+        }
+        PrintWriter out = new PrintWriter(System.out, true);
+        DetectionRunner runner = new DetectionRunner(nonlinear, config, rate, out);
+        out.println("# " + (nonlinear ? "NonlinearMotionManager" : "LinearMotionManager") + " " + config);
+
+        long samples = 0;
+        long start = System.nanoTime();
+        for (File file : files) {
+            samples += runner.run(file);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        out.println(String.format(Locale.US, "# total: %d files, %d samples in %.2f s, %.0f samples/s",
+                files.size(), samples, seconds, samples / seconds));
+        if (metrics) {
+            MetricsRegistry.DEFAULT.dump("# ", out);
+        }
+        out.flush();
+    }
+
+    /**
+     * @param value high,low,history,sleep with an optional true or false for whether to decimate, which is the default
+     */
+    static MotionConfig parseConfig(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4 && parts.length != 5) {
+            throw new IllegalArgumentException("Expected high,low,history,sleep[,decimate] but got " + value);
+        }
+        return new MotionConfig(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                parts.length != 5 || Boolean.parseBoolean(parts[4]));
+    }
+
+    /**
+     * Prints a line per decision, and one summing up the file
+     *
+     * @return the number of samples in the file
+     */
+    long run(File file) throws IOException {
+        final String name = file.getName();
+        final Timestamps timestamps = new Timestamps();
+        final long[] changes = new long[1];
+        final long[] motionSince = {-1};
+        final long[] timeInMotion = new long[1];
+
+        SyntheticSensorSource synthetic = null;
+        ReplaySensorSource replay = null;
+        SensorSource source;
+        if (name.endsWith(".trace")) {
+            source = replay = new ReplaySensorSource(file);
+        } else {
+            synthetic = new SyntheticSensorSource(MotionScript.parse(read(file)), nonlinear, 1);
+            if (rate > 0) synthetic.setFixedRate(rate);
+            source = synthetic;
+        }
+
+        MotionManager manager = nonlinear
+                ? new NonlinearMotionManager(timestamps.wrap(source), config)
+                : new LinearMotionManager(timestamps.wrap(source), config);
+        manager.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean inMotion) {
+                long time = timestamps.elapsed();
+                changes[0]++;
+                if (inMotion) {
+                    motionSince[0] = time;
+                } else if (motionSince[0] >= 0) {
+                    timeInMotion[0] += time - motionSince[0];
+                    motionSince[0] = -1;
+                }
+                out.println(String.format(Locale.US, "%s\t%.2f\t%s", name, time / 1e9, inMotion ? "motion" : "still"));
+            }
+        });
+
+        long start = System.nanoTime();
+        manager.start();
+        long samples = replay != null ? replay.replay() : synthetic.run();
+        manager.stop();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (motionSince[0] >= 0) {
+            timeInMotion[0] += timestamps.elapsed() - motionSince[0];
+        }
+        out.println(String.format(Locale.US, "# %s: %d samples over %.1f s, %d changes, %.1f s in motion, "
+                        + "%.0f samples/s, %.0f times real time",
+                name, samples, timestamps.elapsed() / 1e9, changes[0], timeInMotion[0] / 1e9,
+                samples / seconds, timestamps.elapsed() / 1e9 / seconds));
+        return samples;
+    }
+
+    private static String read(File file) throws IOException {
+        StringBuilder script = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append('\n');
+            }
+        } finally {
+            reader.close();
+        }
+        return script.toString();
+    }
+
+    /**
+     * Remembers the timestamps of the samples passing through, so decisions can be placed in the stream
+     */
+    private static class Timestamps implements SampleListener {
+        private SampleListener listener;
+        private long first = -1; // ns
+        private long last = -1; // ns
+
+        long elapsed() {
+            return first < 0 ? 0 : last - first;
+        }
+
+        SensorSource wrap(final SensorSource source) {
+            return new SensorSource() {
+                @Override
+                public void start(SampleListener listener) {
+                    Timestamps.this.listener = listener;
+                    source.start(Timestamps.this);
+                }
+
+                @Override
+                public void stop() {
+                    source.stop();
+                }
+
+                @Override
+                public void setSamplingPeriod(int samplingPeriodUs) {
+                    source.setSamplingPeriod(samplingPeriodUs);
+                }
+            };
+        }
+
+        @Override
+        public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+            if (first < 0) first = timestamp;
+            last = timestamp;
+            listener.onSample(timestamp, sensorType, x, y, z);
+        }
+    }
+
+}
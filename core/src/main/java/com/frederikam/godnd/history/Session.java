@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.history;
+
+/**
+ * One stretch of time in motion
+ */
+public final class Session {
+
+    final long start; // ms since the epoch
+    final long end; // ms since the epoch
+    final long passengerTime; // ms
+    final long dndTime; // ms
+    final float peakVelocity; // m/s
+    final float meanVelocity; // m/s
+    final int samples;
+
+    public Session(long start, long end, long passengerTime, long dndTime,
+                   float peakVelocity, float meanVelocity, int samples) {
+        if (end < start) throw new IllegalArgumentException("Session ends before it starts");
+        this.start = start;
+        this.end = end;
+        this.passengerTime = passengerTime;
+        this.dndTime = dndTime;
+        this.peakVelocity = peakVelocity;
+        this.meanVelocity = meanVelocity;
+        this.samples = samples;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getPassengerTime() {
+        return passengerTime;
+    }
+
+    public long getDndTime() {
+        return dndTime;
+    }
+
+    public float getPeakVelocity() {
+        return peakVelocity;
+    }
+
+    public float getMeanVelocity() {
+        return meanVelocity;
+    }
+
+    /**
+     * @return the number of velocity samples the peak and mean are based on
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "Session{start=" + start + ", end=" + end + ", passengerTime=" + passengerTime
+                + ", dndTime=" + dndTime + ", peakVelocity=" + peakVelocity + ", meanVelocity=" + meanVelocity
+                + ", samples=" + samples + "}";
+    }
+}
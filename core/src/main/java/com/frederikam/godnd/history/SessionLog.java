@@ -0,0 +1,278 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.history;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of sessions, in order of their start. Sessions are stored as fixed size records, big endian:
+ * <pre>
+ * long start, long end, long passenger time, long DND time, float peak velocity, float mean velocity, int samples,
+ * int crc32 of the preceding bytes
+ * </pre>
+ * The log is split into numbered segment files of a bounded number of records. For each segment we keep the start of
+ * its first session and the end of its last one in memory, so a range query only maps the segments it overlaps, and
+ * then binary searches the mapped records. Nothing is parsed after the log has been opened.
+ * <p>
+ * Checksums are verified when the log is opened. A segment ends at its first record that is torn by a crash or fails
+ * its checksum, as nothing after it can be trusted to be in order, and the next append overwrites it.
+ */
+public class SessionLog {
+
+    public interface Visitor {
+        void onSession(long start, long end, long passengerTime, long dndTime,
+                       float peakVelocity, float meanVelocity, int samples);
+    }
+
+    static final int RECORD_SIZE = 48;
+    static final int SEGMENT_RECORDS = 4096; // About 192 KiB, or years of trips
+
+    private static final String PREFIX = "sessions-";
+    private static final String SUFFIX = ".log";
+
+    private final File dir;
+    private final int segmentRecords;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final List<Segment> segments = new ArrayList<>();
+    private RandomAccessFile raf = null; // Of the last segment
+    private FileChannel channel = null;
+
+    public SessionLog(File dir) throws IOException {
+        this(dir, SEGMENT_RECORDS);
+    }
+
+    SessionLog(File dir, int segmentRecords) throws IOException {
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        openIndex();
+    }
+
+    private static class Segment {
+        final int number;
+        final File file;
+        int count;
+        long firstStart;
+        long lastStart;
+        long lastEnd;
+
+        Segment(int number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+    }
+
+    private void openIndex() throws IOException {
+        String[] names = dir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+        if (names == null) throw new IOException("Unable to list " + dir);
+
+        int[] numbers = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            numbers[i] = Integer.parseInt(names[i].substring(PREFIX.length(), names[i].length() - SUFFIX.length()));
+        }
+        Arrays.sort(numbers);
+
+        for (int number : numbers) {
+            Segment segment = new Segment(number, segmentFile(number));
+            segment.count = (int) Math.min(segmentRecords, segment.file.length() / RECORD_SIZE);
+            if (segment.count == 0) continue;
+
+            segment.count = countValid(map(segment), segment.count);
+            if (segment.count == 0) continue;
+
+            MappedByteBuffer map = map(segment);
+            int last = (segment.count - 1) * RECORD_SIZE;
+            segment.firstStart = map.getLong(0);
+            segment.lastStart = map.getLong(last);
+            segment.lastEnd = map.getLong(last + 8);
+            segments.add(segment);
+        }
+    }
+
+    /**
+     * @return the number of records before the first one that fails its checksum
+     */
+    private int countValid(ByteBuffer map, int count) {
+        byte[] bytes = record.array();
+        for (int i = 0; i < count; i++) {
+            map.position(i * RECORD_SIZE);
+            map.get(bytes);
+            crc.reset();
+            crc.update(bytes, 0, RECORD_SIZE - 4);
+            if ((int) crc.getValue() != record.getInt(RECORD_SIZE - 4)) return i;
+        }
+        return count;
+    }
+
+    private File segmentFile(int number) {
+        return new File(dir, PREFIX + String.format("%08d", number) + SUFFIX);
+    }
+
+    private MappedByteBuffer map(Segment segment) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+        try {
+            // The mapping stays valid after the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) segment.count * RECORD_SIZE);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Sessions are expected in order of their start. The wall clock may have been set back since the previous one
+     * though, in which case the session is clamped to start when the previous one ended.
+     */
+    public synchronized void append(Session session) throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        long start = session.start;
+        long end = session.end;
+        if (last != null && start < last.lastEnd) {
+            start = last.lastEnd;
+            end = Math.max(end, start);
+        }
+
+        if (last == null || last.count == segmentRecords) {
+            closeChannel();
+            last = new Segment(last == null ? 0 : last.number + 1, segmentFile(last == null ? 0 : last.number + 1));
+            last.firstStart = start;
+            segments.add(last);
+        }
+        if (channel == null) {
+            raf = new RandomAccessFile(last.file, "rw");
+            channel = raf.getChannel();
+            // Whatever follows the last good record would otherwise turn up again after we overwrite it
+            channel.truncate((long) last.count * RECORD_SIZE);
+        }
+
+        record.clear();
+        record.putLong(start)
+                .putLong(end)
+                .putLong(session.passengerTime)
+                .putLong(session.dndTime)
+                .putFloat(session.peakVelocity)
+                .putFloat(session.meanVelocity)
+                .putInt(session.samples);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        long position = (long) last.count * RECORD_SIZE;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+
+        last.count++;
+        last.lastStart = start;
+        last.lastEnd = end;
+    }
+
+    /**
+     * Visits every session that overlaps the range, in order
+     *
+     * @param from start of the range in ms since the epoch, inclusive
+     * @param to end of the range in ms since the epoch, exclusive
+     * @return the number of sessions visited
+     */
+    public synchronized int query(long from, long to, Visitor visitor) throws IOException {
+        int visited = 0;
+        for (Segment segment : segments) {
+            if (segment.firstStart >= to || segment.lastEnd <= from) continue;
+
+            MappedByteBuffer map = map(segment);
+            for (int i = firstEndingAfter(map, segment.count, from); i < segment.count; i++) {
+                int offset = i * RECORD_SIZE;
+                long start = map.getLong(offset);
+                if (start >= to) break;
+
+                long end = map.getLong(offset + 8);
+                if (end <= from) continue;
+
+                visitor.onSession(start, end,
+                        map.getLong(offset + 16),
+                        map.getLong(offset + 24),
+                        map.getFloat(offset + 32),
+                        map.getFloat(offset + 36),
+                        map.getInt(offset + 40));
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Sessions don't overlap, so their ends are in order as well
+     */
+    private static int firstEndingAfter(ByteBuffer map, int count, long time) {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (map.getLong(middle * RECORD_SIZE + 8) <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of sessions in the log
+     */
+    public synchronized long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    public synchronized void close() throws IOException {
+        closeChannel();
+    }
+
+    private void closeChannel() throws IOException {
+        if (raf == null) return;
+        raf.close();
+        raf = null;
+        channel = null;
+    }
+}
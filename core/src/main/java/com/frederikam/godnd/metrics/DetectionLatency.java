@@ -0,0 +1,152 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.metrics;
+
+/**
+ * Breaks down how long it takes from the sample that tips us over a threshold until DND has been applied:
+ * <pre>
+ * decide:  sample stored -> state changed, on the sensor thread
+ * deliver: state changed -> the change reached the main thread
+ * apply:   main thread   -> DND applied by the actuator
+ * total:   sample stored -> DND applied
+ * </pre>
+ * Only the latest change is followed, and only if a listener requests DND while the change is being delivered. A change
+ * that doesn't lead to a request, for example because the app is disabled, is dropped once its delivery is handled, so
+ * a later request made for some other reason isn't timed from it. A request that is superseded before DND is applied
+ * is dropped the same way.
+ * <p>
+ * Each pipeline needs its own instance, as the sample being timed is kept per instance.
+ * <p>
+ * Give it a fake clock to measure replayed or synthetic input on the JVM.
+ */
+public class DetectionLatency {
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private static volatile DetectionLatency instance = new DetectionLatency(MetricsRegistry.DEFAULT);
+
+    private final Clock clock;
+    private final Histogram decide;
+    private final Histogram deliver;
+    private final Histogram apply;
+    private final Histogram total;
+
+    private long sampled = UNSET; // Only touched on the sensor thread
+    private volatile long changedSample = UNSET; // When the sample behind the latest change was stored
+    private volatile long changed = UNSET;
+    private volatile long delivered = UNSET;
+    // The change behind the latest request, which is what markApplied() pairs with
+    private volatile long requestedSample = UNSET;
+    private volatile long requested = UNSET;
+
+    public DetectionLatency(MetricsRegistry registry) {
+        clock = registry.getClock();
+        decide = registry.histogram("latency.decide_us", Histogram.LATENCY_BOUNDS_US);
+        deliver = registry.histogram("latency.deliver_us", Histogram.LATENCY_BOUNDS_US);
+        apply = registry.histogram("latency.apply_us", Histogram.LATENCY_BOUNDS_US);
+        total = registry.histogram("latency.total_us", Histogram.LATENCY_BOUNDS_US);
+    }
+
+    public static DetectionLatency get() {
+        return instance;
+    }
+
+    /**
+     * Replaces the instance the pipeline reports to
+     */
+    public static void set(DetectionLatency latency) {
+        instance = latency;
+    }
+
+    /**
+     * A tracker has stored a sample
+     */
+    public void markSample() {
+        sampled = clock.nanoTime();
+    }
+
+    /**
+     * A manager has changed its state, presumably because of the latest sample
+     */
+    public void markChanged() {
+        long now = clock.nanoTime();
+        long sampled = this.sampled == UNSET ? now : this.sampled;
+        decide.record((now - sampled) / 1000);
+
+        delivered = UNSET;
+        changedSample = sampled;
+        changed = now;
+    }
+
+    /**
+     * The change has reached the main thread
+     */
+    public void markDelivered() {
+        long changed = this.changed;
+        if (changed == UNSET || delivered != UNSET) return;
+
+        long now = clock.nanoTime();
+        deliver.record((now - changed) / 1000);
+        delivered = now;
+    }
+
+    /**
+     * A listener has requested DND because of the change being delivered. Must be called on the main thread, for every
+     * request, so that a request made for any other reason replaces the one being timed.
+     */
+    public void markRequested() {
+        // A new change clears the delivery before replacing the sample, so read them the other way around
+        long changedSample = this.changedSample;
+        long delivered = this.delivered;
+        requestedSample = delivered == UNSET ? UNSET : changedSample;
+        requested = delivered;
+    }
+
+    /**
+     * The listeners have had their say on the change being delivered. If none of them requested DND, it is dropped.
+     */
+    public void markHandled() {
+        if (delivered == UNSET) return;
+
+        changed = UNSET;
+        changedSample = UNSET;
+        delivered = UNSET;
+    }
+
+    /**
+     * DND has been applied, which ends the breakdown of the latest request
+     */
+    public void markApplied() {
+        long requested = this.requested;
+        long requestedSample = this.requestedSample;
+        if (requested == UNSET || requestedSample == UNSET) return;
+
+        long now = clock.nanoTime();
+        apply.record((now - requested) / 1000);
+        total.record((now - requestedSample) / 1000);
+
+        this.requested = UNSET;
+        this.requestedSample = UNSET;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and how many of them happened in the last whole second
+ */
+public class Meter {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Clock clock;
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong second; // The second currently being counted
+    private final AtomicLong countAtSecond = new AtomicLong(0); // Count when that second began
+    private volatile long rate = 0; // Events in the last whole second
+
+    Meter(Clock clock) {
+        this.clock = clock;
+        this.second = new AtomicLong(clock.nanoTime() / NANOS_PER_SECOND);
+    }
+
+    public void mark() {
+        long total = count.incrementAndGet();
+        long now = clock.nanoTime() / NANOS_PER_SECOND;
+        long current = second.get();
+
+        // Whoever wins the race closes the second, the losers' events count towards the next one
+        if (now != current && second.compareAndSet(current, now)) {
+            long start = countAtSecond.getAndSet(total - 1);
+            rate = now == current + 1 ? total - 1 - start : 0;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return events in the last whole second, as of the latest event
+     */
+    public long getRate() {
+        // Nothing has been marked for a while, so whatever we counted is stale
+        if (clock.nanoTime() / NANOS_PER_SECOND > second.get() + 1) return 0;
+        return rate;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.metrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named metrics. Looking a metric up takes a lock, so callers should do it once and keep the instance; updating
+ * one is lock-free.
+ */
+public class MetricsRegistry {
+
+    /** The registry the app reports to */
+    public static final MetricsRegistry DEFAULT = new MetricsRegistry(Clock.SYSTEM);
+
+    private final Clock clock;
+    private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+    public MetricsRegistry(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public synchronized Counter counter(String name) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Counter();
+            metrics.put(name, metric);
+        }
+        return cast(name, metric, Counter.class);
+    }
+
+    public synchronized Gauge gauge(String name) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Gauge();
+            metrics.put(name, metric);
+        }
+        return cast(name, metric, Gauge.class);
+    }
+
+    public synchronized Meter meter(String name) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Meter(clock);
+            metrics.put(name, metric);
+        }
+        return cast(name, metric, Meter.class);
+    }
+
+    /**
+     * @param bounds used if the histogram doesn't exist yet
+     */
+    public synchronized Histogram histogram(String name, long[] bounds) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Histogram(bounds);
+            metrics.put(name, metric);
+        }
+        return cast(name, metric, Histogram.class);
+    }
+
+    private static <T> T cast(String name, Object metric, Class<T> type) {
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    /**
+     * Writes every metric on its own line, in the order they were registered
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        List<Map.Entry<String, Object>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(metrics.entrySet());
+        }
+
+        for (Map.Entry<String, Object> entry : entries) {
+            writer.println(prefix + entry.getKey() + ": " + format(entry.getValue()));
+        }
+    }
+
+    private static String format(Object metric) {
+        if (metric instanceof Counter) {
+            return Long.toString(((Counter) metric).get());
+        } else if (metric instanceof Gauge) {
+            return Long.toString(((Gauge) metric).get());
+        } else if (metric instanceof Meter) {
+            Meter meter = (Meter) metric;
+            return meter.getCount() + " total, " + meter.getRate() + "/s";
+        } else {
+            Histogram histogram = (Histogram) metric;
+            return "count=" + histogram.getCount()
+                    + " mean=" + Math.round(histogram.getMean())
+                    + " p50=" + histogram.getPercentile(0.5)
+                    + " p90=" + histogram.getPercentile(0.9)
+                    + " p99=" + histogram.getPercentile(0.99)
+                    + " max=" + histogram.getMax();
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+/**
+ * Streaming cascaded integrator-comb (CIC) decimator. It low-passes a stream and keeps one value out of every
+ * {@code ratio}, so that whatever happens between two kept values is averaged in rather than aliased away.
+ * <p>
+ * The filter is {@code order} moving averages of {@code ratio} samples in a row. It costs {@code order} additions per
+ * input, plus as many subtractions per output, and all of its state is allocated up front. The state is fixed point,
+ * where the integrators are allowed to overflow: the combs cancel that out exactly, so the filter never drifts
+ * however long it runs.
+ */
+public class Decimator {
+
+    private static final double SCALE = 10000; // Fixed point steps per unit
+    private static final double MAX_INPUT = 1000; // Inputs are clamped to +- this
+
+    private final int ratio;
+    private final double gain; // ratio ^ order
+    private final long[] integrators;
+    private final long[] combs; // The value each comb saw at the previous output
+    private int count = 0;
+    private double output = 0;
+
+    /**
+     * @param order number of moving averages in a row. More attenuate aliasing better, but respond more slowly.
+     * @param ratio number of inputs per output
+     */
+    public Decimator(int order, int ratio) {
+        if (order < 1) throw new IllegalArgumentException("Order must be at least 1");
+        if (ratio < 1) throw new IllegalArgumentException("Ratio must be at least 1");
+        this.ratio = ratio;
+        this.gain = Math.pow(ratio, order);
+        // The output before normalisation must fit in a long
+        if (gain * MAX_INPUT * SCALE >= Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Order " + order + " and ratio " + ratio + " would overflow");
+        }
+        integrators = new long[order];
+        combs = new long[order];
+    }
+
+    /**
+     * @return true if this input completed an output, which can be read with {@link #getOutput()}
+     */
+    public boolean add(double value) {
+        long integrated = Math.round(Math.max(-MAX_INPUT, Math.min(MAX_INPUT, value)) * SCALE);
+        for (int i = 0; i < integrators.length; i++) {
+            integrated = integrators[i] += integrated;
+        }
+
+        if (++count < ratio) return false;
+        count = 0;
+
+        long combed = integrated;
+        for (int i = 0; i < combs.length; i++) {
+            long previous = combs[i];
+            combs[i] = combed;
+            combed -= previous;
+        }
+        output = combed / gain / SCALE;
+        return true;
+    }
+
+    /**
+     * @return the latest output, in the unit of the inputs
+     */
+    public double getOutput() {
+        return output;
+    }
+
+    public int getRatio() {
+        return ratio;
+    }
+
+    /**
+     * Forgets all inputs, as if the stream started over from zero
+     */
+    public void reset() {
+        for (int i = 0; i < integrators.length; i++) {
+            integrators[i] = 0;
+            combs[i] = 0;
+        }
+        count = 0;
+        output = 0;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+/**
+ * Tunables of the motion managers. We enter motion once the average velocity rises above the high threshold, and
+ * leave it once it drops below the low one.
+ * <p>
+ * When decimating, the velocities are low-passed by a {@link Decimator} before the window keeps one per sleep
+ * interval. Its ratio follows the sampling rate, so that it spans one sleep interval rounded up to whole samples, and
+ * the window covers about the same stretch of time however fast we sample.
+ */
+public final class MotionConfig {
+
+    public static final MotionConfig LINEAR = new MotionConfig(8, 1.5, 30, 500, true);
+    public static final MotionConfig NONLINEAR = new MotionConfig(8, 2, 30, 500, true);
+
+    final double thresholdHigh; // m/s
+    final double thresholdLow; // m/s
+    final int maxHistory; // samples
+    final int sleepInterval; // ms
+    final boolean decimate;
+
+    /**
+     * @param thresholdHigh average velocity in m/s above which we are in motion
+     * @param thresholdLow average velocity in m/s below which we are no longer in motion
+     * @param maxHistory number of samples to average over
+     * @param sleepInterval minimum time between samples in ms
+     */
+    public MotionConfig(double thresholdHigh, double thresholdLow, int maxHistory, int sleepInterval) {
+        this(thresholdHigh, thresholdLow, maxHistory, sleepInterval, true);
+    }
+
+    /**
+     * @param decimate whether to average every velocity between two the window keeps into the kept one, rather than
+     *                 keeping whichever comes first
+     */
+    public MotionConfig(double thresholdHigh, double thresholdLow, int maxHistory, int sleepInterval, boolean decimate) {
+        if (thresholdLow > thresholdHigh) throw new IllegalArgumentException("Low threshold is above the high one");
+        if (maxHistory < 4) throw new IllegalArgumentException("Need a history of at least 4 samples");
+        if (sleepInterval < 0) throw new IllegalArgumentException("Sleep interval can't be negative");
+        this.thresholdHigh = thresholdHigh;
+        this.thresholdLow = thresholdLow;
+        this.maxHistory = maxHistory;
+        this.sleepInterval = sleepInterval;
+        this.decimate = decimate;
+    }
+
+    public double getThresholdHigh() {
+        return thresholdHigh;
+    }
+
+    public double getThresholdLow() {
+        return thresholdLow;
+    }
+
+    public int getMaxHistory() {
+        return maxHistory;
+    }
+
+    public int getSleepInterval() {
+        return sleepInterval;
+    }
+
+    public boolean isDecimating() {
+        return decimate;
+    }
+
+    @Override
+    public String toString() {
+        return "MotionConfig{high=" + thresholdHigh + ", low=" + thresholdLow
+                + ", maxHistory=" + maxHistory + ", sleepInterval=" + sleepInterval + ", decimate=" + decimate + "}";
+    }
+}
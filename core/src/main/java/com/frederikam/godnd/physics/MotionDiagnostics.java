@@ -22,38 +22,37 @@
 
 package com.frederikam.godnd.physics;
 
-import android.hardware.Sensor;
+/**
+ * Optional tracing of the sensor pipeline. The hooks only pass primitives, so a disabled or well behaved sink
+ * costs nothing more than a volatile read per stored sample.
+ */
+public final class MotionDiagnostics {
+
+    /** Set to false to compile the hooks out of the pipeline entirely */
+    static final boolean COMPILED_IN = true;
 
-import com.frederikam.godnd.MainActivity;
+    private static volatile Sink sink = null;
 
-public class LinearMotionManager extends MotionManager {
+    private MotionDiagnostics() {}
 
-    private static final double MOTION_THRESHOLD_HIGH = 8; // m/s
-    private static final double MOTION_THRESHOLD_LOW = 1.5; // m/s
+    public interface Sink {
 
-    private MotionTracker tracker = new MotionTracker(500, 30, Sensor.TYPE_LINEAR_ACCELERATION);
-    private boolean inMotion = false;
+        /**
+         * Called on the sensor thread every time a tracker stores a sample. Must not block.
+         */
+        void onSampleStored(long timestamp, double velocity, double averageVelocity);
 
-    public LinearMotionManager() {
-        super("LinearMotionManager");
     }
 
-    @Override
-    void tick() {
-        MainActivity activity = MainActivity.getInstance();
-
-        if (!inMotion && tracker.getAverageVelocity() > MOTION_THRESHOLD_HIGH) {
-            inMotion = true;
-            if(activity == null) return;
-            activity.onMotionChanged(true);
-        } else if (inMotion && tracker.getAverageVelocity() < MOTION_THRESHOLD_LOW) {
-            inMotion = false;
-            if(activity == null) return;
-            activity.onMotionChanged(false);
-        }
+    /**
+     * @param sink the sink to send diagnostics to, or null to disable them
+     */
+    public static void setSink(Sink sink) {
+        MotionDiagnostics.sink = sink;
     }
 
-    public boolean isInMotion() {
-        return inMotion;
+    static Sink getSink() {
+        return COMPILED_IN ? sink : null;
     }
+
 }
@@ -0,0 +1,210 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import com.frederikam.godnd.metrics.Clock;
+import com.frederikam.godnd.metrics.DetectionLatency;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+import com.frederikam.godnd.power.PowerBudget;
+
+/**
+ * Decides whether we are in motion. Decisions are made as new samples arrive, so there is no polling.
+ */
+public abstract class MotionManager {
+
+    private static final Clock CLOCK = MetricsRegistry.DEFAULT.getClock();
+
+    private final String name;
+    private volatile MotionListener listener = null;
+    private volatile DetectionLatency latency;
+    private volatile MotionMetrics metrics = MotionMetrics.DEFAULT;
+    private volatile PowerBudget budget = PowerBudget.get();
+    private TickObserver tickObserver = null;
+    private boolean running = false;
+    private boolean changed = false; // Whether the current tick changed our state
+
+    MotionManager(String name) {
+        this(name, DetectionLatency.get());
+    }
+
+    MotionManager(String name, DetectionLatency latency) {
+        this.name = name;
+        this.latency = latency;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        onStart();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        onStop();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    abstract void onStart();
+
+    abstract void onStop();
+
+    /**
+     * Forgets the samples seen so far, so that the next start decides from fresh samples only. If we were in motion,
+     * listeners hear that we no longer are. Must only be called while stopped, from the thread samples are delivered
+     * on.
+     */
+    public void reset() {}
+
+    /**
+     * Checks the thresholds
+     */
+    abstract void tick();
+
+    /**
+     * Called by the {@link MotionTracker} every time it stores a new sample
+     *
+     * @param timestamp of the sample in ns
+     */
+    final void onSampleStored(long timestamp) {
+        MotionMetrics metrics = this.metrics;
+        PowerBudget budget = this.budget;
+        changed = false;
+        if (metrics == null && budget == null) {
+            tick();
+        } else {
+            long start = CLOCK.nanoTime();
+            tick();
+            long elapsed = CLOCK.nanoTime() - start;
+            if (budget != null) budget.onCpuTime(elapsed);
+            if (metrics != null) {
+                metrics.tickTime.record(elapsed / 1000);
+                if (changed) metrics.decisionTime.record(elapsed / 1000);
+            }
+        }
+
+        TickObserver observer = tickObserver;
+        if (observer != null) {
+            observer.afterTick(timestamp);
+        }
+    }
+
+    interface TickObserver {
+        void afterTick(long timestamp);
+    }
+
+    void setTickObserver(TickObserver observer) {
+        this.tickObserver = observer;
+    }
+
+    public abstract boolean isInMotion();
+
+    /**
+     * @return the scheduler controlling our sampling rate, or null if we don't sample any sensors
+     */
+    public SamplingScheduler getSamplingScheduler() {
+        return null;
+    }
+
+    /**
+     * Copies the latest statistics of our velocity window. Safe to call from any thread.
+     *
+     * @return false if we don't keep a velocity window
+     */
+    public boolean readStats(MotionStats out) {
+        return false;
+    }
+
+    /**
+     * Safe to call from any thread. The summary is published before listeners hear that we are no longer in motion.
+     *
+     * @return the velocities of the latest finished motion session, or null if we don't know them
+     */
+    public VelocitySummary getLastSession() {
+        return null;
+    }
+
+    public void setMotionListener(MotionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the instance our decisions are timed by, which is {@link DetectionLatency#get()} by default. Managers
+     * that run side by side need one each, as the sample being timed is only tracked per instance.
+     *
+     * @param latency the instance to report to, or null to not time our decisions
+     */
+    public void setDetectionLatency(DetectionLatency latency) {
+        this.latency = latency;
+    }
+
+    DetectionLatency getDetectionLatency() {
+        return latency;
+    }
+
+    /**
+     * Replaces the registry we and our tracker report to, which is {@link MetricsRegistry#DEFAULT} by default.
+     * Managers that are measured separately, like the ones of a parameter sweep, need one each.
+     *
+     * @param registry the registry to report to, or null to not report at all
+     */
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        this.metrics = registry == null ? null : new MotionMetrics(registry);
+    }
+
+    MotionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the budget our sensor events and CPU time are charged to, which is {@link PowerBudget#get()} by default
+     *
+     * @param budget the budget to charge, or null to not charge any
+     */
+    public void setPowerBudget(PowerBudget budget) {
+        this.budget = budget;
+    }
+
+    PowerBudget getPowerBudget() {
+        return budget;
+    }
+
+    void notifyMotionChanged(boolean inMotion) {
+        changed = true;
+        MotionMetrics metrics = this.metrics;
+        if (metrics != null) metrics.changes.increment();
+        DetectionLatency latency = this.latency;
+        if (latency != null) latency.markChanged();
+        MotionListener listener = this.listener;
+        if (listener == null) return;
+        listener.onMotionChanged(inMotion);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import com.frederikam.godnd.metrics.Counter;
+import com.frederikam.godnd.metrics.Gauge;
+import com.frederikam.godnd.metrics.Histogram;
+import com.frederikam.godnd.metrics.Meter;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+
+/**
+ * The metrics a manager and its tracker report to, looked up once per registry
+ */
+class MotionMetrics {
+
+    static final MotionMetrics DEFAULT = new MotionMetrics(MetricsRegistry.DEFAULT);
+
+    final Histogram tickTime;
+    // From a sample being stored to the listener having heard about the change it caused
+    final Histogram decisionTime;
+    final Counter changes;
+    final Meter sensorEvents;
+    final Counter samplesKept;
+    final Counter samplesDropped;
+    final Gauge samplingPeriod;
+
+    MotionMetrics(MetricsRegistry registry) {
+        tickTime = registry.histogram("motion.tick_us", Histogram.LATENCY_BOUNDS_US);
+        decisionTime = registry.histogram("motion.decision_us", Histogram.LATENCY_BOUNDS_US);
+        changes = registry.counter("motion.changes");
+        sensorEvents = registry.meter("sensor.events");
+        samplesKept = registry.counter("tracker.samples.kept");
+        samplesDropped = registry.counter("tracker.samples.dropped");
+        samplingPeriod = registry.gauge("sensor.sampling_period_us");
+    }
+
+}
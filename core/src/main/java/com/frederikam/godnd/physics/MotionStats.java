@@ -22,39 +22,52 @@
 
 package com.frederikam.godnd.physics;
 
-import android.hardware.Sensor;
+/**
+ * Statistics of the velocity window of a tracker, as of one stored sample. Instances are meant to be reused by
+ * readers, see {@link MotionManager#readStats(MotionStats)}.
+ */
+public class MotionStats {
 
-import com.frederikam.godnd.MainActivity;
+    int size = 0;
+    double mean = 0; // m/s
+    double variance = 0;
+    double min = 0; // m/s
+    double max = 0; // m/s
+    long timestamp = 0; // ns
 
-public class NonlinearMotionManager extends MotionManager {
+    /**
+     * @return the number of samples in the window
+     */
+    public int getSize() {
+        return size;
+    }
 
-    private static final double MOTION_THRESHOLD_HIGH = 8; // m/s
-    private static final double MOTION_THRESHOLD_LOW = 2; // m/s
+    public double getMean() {
+        return mean;
+    }
 
-    private MotionTracker tracker = new MotionTracker(500, 30, Sensor.TYPE_ACCELEROMETER);
-    private boolean inMotion = false;
+    public double getVariance() {
+        return variance;
+    }
 
-    public NonlinearMotionManager() {
-        super("NonlinearMotionManager");
+    public double getMin() {
+        return min;
     }
 
-    @Override
-    void tick() {
-        MainActivity activity = MainActivity.getInstance();
-
-        if (!inMotion && tracker.getAverageVelocity() > MOTION_THRESHOLD_HIGH) {
-            inMotion = true;
-            if(activity == null) return;
-            activity.onMotionChanged(true);
-        } else if (inMotion && tracker.getAverageVelocity() < MOTION_THRESHOLD_LOW) {
-            inMotion = false;
-            if(activity == null) return;
-            activity.onMotionChanged(false);
-        }
+    public double getMax() {
+        return max;
     }
 
-    public boolean isInMotion() {
-        return inMotion;
+    /**
+     * @return sensor timestamp of the latest sample in ns
+     */
+    public long getTimestamp() {
+        return timestamp;
     }
 
+    @Override
+    public String toString() {
+        return "MotionStats{size=" + size + ", mean=" + mean + ", variance=" + variance
+                + ", min=" + min + ", max=" + max + ", timestamp=" + timestamp + "}";
+    }
 }
@@ -0,0 +1,252 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import com.frederikam.godnd.metrics.DetectionLatency;
+import com.frederikam.godnd.power.PowerBudget;
+
+/**
+ * Keeps a window of recent velocities. The window belongs to the thread delivering the samples; other threads must
+ * go through {@link #readStats(MotionStats)}.
+ */
+class MotionTracker implements SampleListener {
+
+    private static final int DECIMATION_ORDER = 3;
+
+    private final SampleWindow motion;
+    private final StatsSeqlock stats = new StatsSeqlock();
+    private final VelocityEstimator estimator = new VelocityEstimator();
+    private final SamplingScheduler scheduler = new SamplingScheduler();
+    private final int[] periods = scheduler.getSamplingPeriods(); // us
+    // One per sampling period of the scheduler, so that each outputs once per sleep interval. Null if we keep
+    // velocities as they are.
+    private final Decimator[] decimators;
+    private Decimator decimator = null; // For the current sampling period
+    private long minSpacing; // ns between kept velocities
+    private final MotionManager manager;
+    private final SensorSource source;
+    private final int minHistory;
+    private long lastEventSavedTime = 0; // Sensor timestamp in ns
+    private long sleepInterval; // ns
+
+    // Velocities over the current motion session, if any
+    private boolean inSession = false;
+    private int sessionSamples = 0;
+    private double sessionSum = 0;
+    private double sessionPeak = 0;
+    private volatile VelocitySummary lastSession = null;
+
+    /**
+     * @param decimate whether to average every velocity between two kept ones into the kept one
+     */
+    MotionTracker(int sleepInterval, int maxHistory, boolean decimate, SensorSource source, MotionManager manager) {
+        this.sleepInterval = sleepInterval * 1000000L;
+        this.minHistory = maxHistory/4;
+        this.motion = new SampleWindow(maxHistory);
+        this.source = source;
+        this.manager = manager;
+
+        decimators = decimate ? new Decimator[periods.length] : null;
+        for (int i = 0; decimate && i < periods.length; i++) {
+            // Round up, as a shorter spacing than the sleep interval would have every other output dropped
+            long ratio = (this.sleepInterval + periods[i] * 1000L - 1) / (periods[i] * 1000L);
+            decimators[i] = new Decimator(DECIMATION_ORDER, (int) Math.max(1, ratio));
+        }
+        selectDecimator();
+    }
+
+    void start() {
+        publishSamplingPeriod();
+        source.setSamplingPeriod(scheduler.getSamplingPeriod());
+        source.start(this);
+    }
+
+    /**
+     * Switches to the decimator for the current sampling period, which starts over
+     */
+    private void selectDecimator() {
+        minSpacing = sleepInterval;
+        if (decimators == null) return;
+
+        int period = scheduler.getSamplingPeriod();
+        for (int i = 0; i < periods.length; i++) {
+            if (periods[i] != period) continue;
+            if (decimator != decimators[i]) {
+                decimator = decimators[i];
+                decimator.reset();
+            }
+        }
+        // The decimator spaces its outputs by the sleep interval already, give or take the jitter of the timestamps
+        minSpacing = sleepInterval - period * 1000L / 2;
+    }
+
+    void stop() {
+        source.stop();
+        // Don't integrate over the time we weren't listening
+        estimator.pause();
+        if (decimator != null) decimator.reset();
+        scheduler.pause();
+    }
+
+    /**
+     * Empties the velocity window. Must only be called while stopped.
+     */
+    void reset() {
+        motion.clear();
+        stats.publish(motion, lastEventSavedTime);
+    }
+
+    /**
+     * Adapts the sampling rate to how close we are to changing state
+     *
+     * @param distance between the average velocity and the threshold that would change our state, in m/s
+     */
+    void adjustSampling(double distance) {
+        if (scheduler.update(lastEventSavedTime, distance)) {
+            publishSamplingPeriod();
+            source.setSamplingPeriod(scheduler.getSamplingPeriod());
+            selectDecimator();
+        }
+    }
+
+    private void publishSamplingPeriod() {
+        MotionMetrics metrics = manager.getMetrics();
+        if (metrics != null) metrics.samplingPeriod.set(scheduler.getSamplingPeriod());
+    }
+
+    SamplingScheduler getScheduler() {
+        return scheduler;
+    }
+
+    double getAverageVelocity() {
+        // Returns a negative number if we have too little history
+        if (motion.size() < minHistory) {
+            return Double.MIN_VALUE;
+        }
+
+        return motion.getMean();
+    }
+
+    double getVelocityVariance() {
+        return motion.getVariance();
+    }
+
+    double getMinVelocity() {
+        return motion.getMin();
+    }
+
+    double getMaxVelocity() {
+        return motion.getMax();
+    }
+
+    void beginSession() {
+        inSession = true;
+        sessionSamples = 0;
+        sessionSum = 0;
+        sessionPeak = 0;
+    }
+
+    void endSession() {
+        if (!inSession) return;
+        inSession = false;
+        lastSession = new VelocitySummary(sessionSamples,
+                sessionSamples == 0 ? 0 : sessionSum / sessionSamples, sessionPeak);
+    }
+
+    /**
+     * @return the velocities of the latest finished session, or null if there hasn't been one
+     */
+    VelocitySummary getLastSession() {
+        return lastSession;
+    }
+
+    /**
+     * Reads a consistent copy of the window statistics from any thread, without locking
+     */
+    void readStats(MotionStats out) {
+        stats.read(out);
+    }
+
+    private void addMotion(double magnitude, long timestamp) {
+        // The window evicts the oldest sample by itself once full
+        motion.add(magnitude);
+
+        if (inSession) {
+            sessionSamples++;
+            sessionSum += magnitude;
+            if (magnitude > sessionPeak) sessionPeak = magnitude;
+        }
+
+        lastEventSavedTime = timestamp;
+        stats.publish(motion, timestamp);
+        DetectionLatency latency = manager.getDetectionLatency();
+        if (latency != null) latency.markSample();
+
+        MotionDiagnostics.Sink sink = MotionDiagnostics.getSink();
+        if (sink != null) {
+            sink.onSampleStored(timestamp, magnitude, getAverageVelocity());
+        }
+    }
+
+    @Override
+    public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+        MotionMetrics metrics = manager.getMetrics();
+        PowerBudget budget = manager.getPowerBudget();
+        if (metrics != null) metrics.sensorEvents.mark();
+        if (budget != null) budget.onSensorEvent();
+
+        // Samples are timed by when they were taken rather than when they were delivered, as batches arrive all at once
+        switch (sensorType) {
+            case SensorType.ACCELEROMETER:
+                estimator.onAcceleration(timestamp, x, y, z, true);
+                break;
+            case SensorType.LINEAR_ACCELERATION:
+                estimator.onAcceleration(timestamp, x, y, z, false);
+                break;
+            case SensorType.GYROSCOPE:
+                estimator.onRotation(timestamp, x, y, z);
+                return;
+            default:
+                return;
+        }
+
+        double speed = estimator.getSpeed();
+        if (decimator != null) {
+            // Everything between two kept velocities is averaged in, instead of only the one we happen to keep
+            if (!decimator.add(speed)) return;
+            speed = decimator.getOutput();
+        }
+
+        // Make sure we're not adding to the queue too fast
+        if(timestamp - lastEventSavedTime < minSpacing) {
+            if (metrics != null) metrics.samplesDropped.increment();
+            return;
+        }
+
+        if (metrics != null) metrics.samplesKept.increment();
+        addMotion(speed, timestamp);
+
+        // Let the manager react to the new sample straight away
+        manager.onSampleStored(timestamp);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+public class NonlinearMotionManager extends MotionManager {
+
+    private final MotionConfig config;
+    private final MotionTracker tracker;
+    private volatile boolean inMotion = false;
+
+    /**
+     * @param source should provide {@link SensorType#ACCELEROMETER} samples, and {@link SensorType#GYROSCOPE} samples
+     *               if the device has a gyroscope
+     */
+    public NonlinearMotionManager(SensorSource source) {
+        this(source, MotionConfig.NONLINEAR);
+    }
+
+    public NonlinearMotionManager(SensorSource source, MotionConfig config) {
+        super("NonlinearMotionManager");
+        this.config = config;
+        tracker = new MotionTracker(config.sleepInterval, config.maxHistory, config.decimate, source, this);
+    }
+
+    @Override
+    void onStart() {
+        tracker.start();
+    }
+
+    @Override
+    void onStop() {
+        tracker.stop();
+    }
+
+    @Override
+    public void reset() {
+        tracker.reset();
+        if (inMotion) {
+            inMotion = false;
+            tracker.endSession();
+            notifyMotionChanged(false);
+        }
+    }
+
+    @Override
+    void tick() {
+        double velocity = tracker.getAverageVelocity();
+
+        if (!inMotion && velocity > config.thresholdHigh) {
+            inMotion = true;
+            tracker.beginSession();
+            notifyMotionChanged(true);
+        } else if (inMotion && velocity < config.thresholdLow) {
+            inMotion = false;
+            tracker.endSession();
+            notifyMotionChanged(false);
+        }
+
+        tracker.adjustSampling(Math.abs(velocity - (inMotion ? config.thresholdLow : config.thresholdHigh)));
+    }
+
+    @Override
+    public SamplingScheduler getSamplingScheduler() {
+        return tracker.getScheduler();
+    }
+
+    @Override
+    public boolean readStats(MotionStats out) {
+        tracker.readStats(out);
+        return true;
+    }
+
+    @Override
+    public VelocitySummary getLastSession() {
+        return tracker.getLastSession();
+    }
+
+    public boolean isInMotion() {
+        return inMotion;
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+/**
+ * Fixed capacity sliding window of samples backed by a primitive ring buffer.
+ * Mean, variance, min and max are all available in O(1) and adding a sample never allocates.
+ */
+class SampleWindow {
+
+    // Running sums slowly accumulate rounding errors, so we recompute them from scratch now and then
+    private static final int RESUM_INTERVAL = 1024;
+
+    private final double[] values;
+    private final int capacity;
+    private int head = 0; // Index of the oldest sample
+    private int size = 0;
+
+    private double sum = 0;
+    private double sumSquares = 0;
+    private int evictionsSinceResum = 0;
+
+    // Monotonic deques of sample sequence numbers, used for the sliding min and max
+    private final long[] minQueue;
+    private final long[] maxQueue;
+    private int minHead = 0, minSize = 0;
+    private int maxHead = 0, maxSize = 0;
+    private long sequence = 0; // Sequence number of the next sample
+
+    SampleWindow(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.values = new double[capacity];
+        this.minQueue = new long[capacity];
+        this.maxQueue = new long[capacity];
+    }
+
+    void add(double value) {
+        if (size == capacity) {
+            double evicted = values[head];
+            head = (head + 1) % capacity;
+            size--;
+            sum -= evicted;
+            sumSquares -= evicted * evicted;
+            evictionsSinceResum++;
+        }
+
+        values[(head + size) % capacity] = value;
+        size++;
+        sum += value;
+        sumSquares += value * value;
+
+        long seq = sequence++;
+        long oldest = sequence - size;
+        pushMin(value, seq, oldest);
+        pushMax(value, seq, oldest);
+
+        if (evictionsSinceResum >= RESUM_INTERVAL) {
+            resum();
+        }
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+        sum = 0;
+        sumSquares = 0;
+        evictionsSinceResum = 0;
+        minHead = minSize = 0;
+        maxHead = maxSize = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    double getMean() {
+        return size == 0 ? 0 : sum / size;
+    }
+
+    /**
+     * @return the population variance of the window
+     */
+    double getVariance() {
+        if (size == 0) return 0;
+        double mean = sum / size;
+        // Guard against tiny negative results caused by cancellation
+        return Math.max(0, sumSquares / size - mean * mean);
+    }
+
+    double getMin() {
+        return size == 0 ? 0 : valueOf(minQueue[minHead]);
+    }
+
+    double getMax() {
+        return size == 0 ? 0 : valueOf(maxQueue[maxHead]);
+    }
+
+    private double valueOf(long seq) {
+        long oldest = sequence - size;
+        return values[(int) ((head + (seq - oldest)) % capacity)];
+    }
+
+    private void pushMin(double value, long seq, long oldest) {
+        // Drop expired entries from the front, and entries that can never be the minimum again from the back
+        while (minSize > 0 && minQueue[minHead] < oldest) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        while (minSize > 0 && valueOf(minQueue[(minHead + minSize - 1) % capacity]) >= value) {
+            minSize--;
+        }
+        minQueue[(minHead + minSize) % capacity] = seq;
+        minSize++;
+    }
+
+    private void pushMax(double value, long seq, long oldest) {
+        while (maxSize > 0 && maxQueue[maxHead] < oldest) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        while (maxSize > 0 && valueOf(maxQueue[(maxHead + maxSize - 1) % capacity]) <= value) {
+            maxSize--;
+        }
+        maxQueue[(maxHead + maxSize) % capacity] = seq;
+        maxSize++;
+    }
+
+    private void resum() {
+        double s = 0, sq = 0;
+        for (int i = 0; i < size; i++) {
+            double v = values[(head + i) % capacity];
+            s += v;
+            sq += v * v;
+        }
+        sum = s;
+        sumSquares = sq;
+        evictionsSinceResum = 0;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+/**
+ * Picks the sensor sampling period from how close the velocity estimate is to the threshold that would change our
+ * state. Far from a transition we can afford to sample slowly, while close to one we want every sample we can get.
+ * <p>
+ * Faster rates are applied straight away, while slower rates must be wanted for a few consecutive samples first.
+ * The fastest rate can be capped from any thread, for example to stay within a power budget.
+ */
+public class SamplingScheduler {
+
+    // Sampling periods in us, fastest first
+    private static final int[] PERIODS = {20000, 66667, 200000}; // 50 Hz, 15 Hz and 5 Hz
+    // Distance to the relevant threshold in m/s, below which each period is used
+    private static final double[] DISTANCES = {2, 5, Double.MAX_VALUE};
+    private static final int SLOW_DOWN_AFTER = 4; // samples
+
+    private final long[] timeAtPeriod = new long[PERIODS.length]; // ns
+    private int current = 0;
+    private int pending = 0;
+    private int pendingCount = 0;
+    private long lastUpdate = -1; // ns
+    private volatile int fastest = 0; // Index of the fastest period we may use
+
+    /**
+     * @param timestamp of the sample that led to this update in ns
+     * @param distance  between the velocity estimate and the threshold that would change our state, in m/s
+     * @return true if the sampling period changed
+     */
+    boolean update(long timestamp, double distance) {
+        if (lastUpdate >= 0 && timestamp > lastUpdate) {
+            timeAtPeriod[current] += timestamp - lastUpdate;
+        }
+        lastUpdate = timestamp;
+
+        int fastest = this.fastest;
+        if (current < fastest) {
+            current = fastest;
+            pendingCount = 0;
+            return true;
+        }
+
+        int wanted = 0;
+        while (distance >= DISTANCES[wanted]) {
+            wanted++;
+        }
+        wanted = Math.max(wanted, fastest);
+
+        if (wanted < current) {
+            current = wanted;
+            pendingCount = 0;
+            return true;
+        }
+
+        if (wanted == current) {
+            pendingCount = 0;
+            return false;
+        }
+
+        if (wanted != pending) {
+            pending = wanted;
+            pendingCount = 0;
+        }
+        if (++pendingCount < SLOW_DOWN_AFTER) return false;
+
+        current = wanted;
+        pendingCount = 0;
+        return true;
+    }
+
+    /**
+     * Forgets when the last update was, so time spent stopped isn't counted
+     */
+    void pause() {
+        lastUpdate = -1;
+    }
+
+    /**
+     * Caps how fast we sample from the next update on
+     *
+     * @param samplingPeriodUs the shortest period we may use, or 0 to lift the cap
+     */
+    public void setFastestSamplingPeriod(int samplingPeriodUs) {
+        int index = 0;
+        while (index < PERIODS.length - 1 && PERIODS[index] < samplingPeriodUs) {
+            index++;
+        }
+        fastest = index;
+    }
+
+    /**
+     * @return the current sampling period in us
+     */
+    public int getSamplingPeriod() {
+        return PERIODS[current];
+    }
+
+    /**
+     * @return the sampling periods we choose from in us, fastest first
+     */
+    public int[] getSamplingPeriods() {
+        return PERIODS.clone();
+    }
+
+    /**
+     * @return the time spent sampling at each of {@link #getSamplingPeriods()} in ns
+     */
+    public long[] getTimeAtSamplingPeriods() {
+        return timeAtPeriod.clone();
+    }
+
+}
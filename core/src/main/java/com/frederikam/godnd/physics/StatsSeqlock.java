@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Publishes the statistics of a {@link SampleWindow} from the one thread that writes to it, to any number of readers.
+ * The writer never blocks or allocates. Readers retry until they have read a consistent set of values.
+ */
+class StatsSeqlock {
+
+    private static final int SIZE = 0;
+    private static final int MEAN = 1;
+    private static final int VARIANCE = 2;
+    private static final int MIN = 3;
+    private static final int MAX = 4;
+    private static final int TIMESTAMP = 5;
+
+    // Odd while the writer is in the middle of publishing
+    private volatile long sequence = 0;
+    // Doubles are stored by their bits. The slots are volatile, so reads of them can't move past the sequence checks
+    private final AtomicLongArray fields = new AtomicLongArray(6);
+
+    /**
+     * Must only be called by the thread writing to the window
+     */
+    void publish(SampleWindow window, long timestamp) {
+        long seq = sequence;
+        sequence = seq + 1;
+
+        fields.set(SIZE, window.size());
+        fields.set(MEAN, Double.doubleToRawLongBits(window.getMean()));
+        fields.set(VARIANCE, Double.doubleToRawLongBits(window.getVariance()));
+        fields.set(MIN, Double.doubleToRawLongBits(window.getMin()));
+        fields.set(MAX, Double.doubleToRawLongBits(window.getMax()));
+        fields.set(TIMESTAMP, timestamp);
+
+        sequence = seq + 2;
+    }
+
+    void read(MotionStats out) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) != 0) {
+                // The writer is only ever a few stores away from done
+                Thread.yield();
+                continue;
+            }
+
+            int size = (int) fields.get(SIZE);
+            double mean = Double.longBitsToDouble(fields.get(MEAN));
+            double variance = Double.longBitsToDouble(fields.get(VARIANCE));
+            double min = Double.longBitsToDouble(fields.get(MIN));
+            double max = Double.longBitsToDouble(fields.get(MAX));
+            long timestamp = fields.get(TIMESTAMP);
+
+            if (sequence == before) {
+                out.size = size;
+                out.mean = mean;
+                out.variance = variance;
+                out.min = min;
+                out.max = max;
+                out.timestamp = timestamp;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import com.frederikam.godnd.metrics.DetectionLatency;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+import com.frederikam.godnd.power.PowerBudget;
+
+/**
+ * Keeps a {@link MotionManager} switched off until a low power {@link TriggerSource} suggests we may be moving.
+ * Once the manager has been running for a while without detecting motion, it is switched off again, its samples are
+ * forgotten and the trigger is re-armed. If the device has no such trigger, the manager simply keeps running.
+ */
+public class TieredMotionDetector extends MotionManager implements TriggerSource.Listener, MotionListener,
+        MotionManager.TickObserver {
+
+    public static final long DEFAULT_QUIET_PERIOD = 60L * 1000000000L; // ns
+
+    private final MotionManager manager;
+    private final TriggerSource trigger;
+    private long quietPeriod;
+    private final boolean lowPower; // Whether there is a trigger to wait for, or we must keep the manager running
+    private boolean active = false;
+    private long quietSince = -1; // ns
+
+    public TieredMotionDetector(MotionManager manager, TriggerSource trigger) {
+        this(manager, trigger, DEFAULT_QUIET_PERIOD);
+    }
+
+    /**
+     * @param quietPeriod how long the manager must go without detecting motion before it is switched off, in ns
+     */
+    public TieredMotionDetector(MotionManager manager, TriggerSource trigger, long quietPeriod) {
+        // The wrapped manager makes the decisions, so it is the one to time them
+        super("Tiered" + manager.getName(), null);
+        this.manager = manager;
+        this.trigger = trigger;
+        this.quietPeriod = quietPeriod;
+        this.lowPower = trigger.isAvailable();
+        manager.setMotionListener(this);
+        manager.setTickObserver(this);
+    }
+
+    @Override
+    synchronized void onStart() {
+        // A manager that still thinks we are moving needs its sensors to find out that we stopped
+        if (lowPower && !manager.isInMotion()) {
+            enterLowPower();
+        } else {
+            active = true;
+            quietSince = -1;
+            manager.start();
+        }
+    }
+
+    @Override
+    synchronized void onStop() {
+        trigger.disarm();
+        manager.stop();
+        active = false;
+    }
+
+    @Override
+    public synchronized void onTrigger() {
+        if (active || !isRunning()) return;
+
+        active = true;
+        quietSince = -1;
+        manager.start();
+    }
+
+    @Override
+    public synchronized void afterTick(long timestamp) {
+        if (!active || !lowPower) return;
+
+        if (manager.isInMotion()) {
+            quietSince = -1;
+        } else if (quietSince < 0) {
+            quietSince = timestamp;
+        } else if (timestamp - quietSince >= quietPeriod) {
+            enterLowPower();
+        }
+    }
+
+    private void enterLowPower() {
+        manager.stop();
+        // The trigger may fire long after these samples, which must not count towards the next decision
+        manager.reset();
+        active = false;
+        trigger.arm(this);
+    }
+
+    @Override
+    public void reset() {
+        manager.reset();
+    }
+
+    @Override
+    void tick() {
+        // The wrapped manager makes its own decisions
+    }
+
+    @Override
+    public void setDetectionLatency(DetectionLatency latency) {
+        manager.setDetectionLatency(latency);
+    }
+
+    @Override
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        super.setMetricsRegistry(registry);
+        manager.setMetricsRegistry(registry);
+    }
+
+    @Override
+    public void setPowerBudget(PowerBudget budget) {
+        manager.setPowerBudget(budget);
+    }
+
+    @Override
+    public void onMotionChanged(boolean inMotion) {
+        notifyMotionChanged(inMotion);
+    }
+
+    @Override
+    public boolean isInMotion() {
+        return manager.isInMotion();
+    }
+
+    /**
+     * @param quietPeriod how long the manager must go without detecting motion before it is switched off, in ns
+     */
+    public synchronized void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * @return true if the full sensor pipeline is running, false if we are only waiting for the trigger
+     */
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public SamplingScheduler getSamplingScheduler() {
+        return manager.getSamplingScheduler();
+    }
+
+    @Override
+    public boolean readStats(MotionStats out) {
+        return manager.readStats(out);
+    }
+
+    @Override
+    public VelocitySummary getLastSession() {
+        return manager.getLastSession();
+    }
+}
@@ -22,35 +22,25 @@
 
 package com.frederikam.godnd.physics;
 
-import android.view.View;
-import android.widget.Button;
-
-import com.frederikam.godnd.MainActivity;
-
-public class EmulatorMotionManager extends MotionManager implements Button.OnClickListener {
-
-    private boolean inMotion = false;
+/**
+ * A cheap, low power signal that the device might have started moving, such as the significant motion sensor.
+ */
+public interface TriggerSource {
 
-    public EmulatorMotionManager(Button button) {
-        super("EmulatorMotionManager");
-        button.setOnClickListener(this);
-        button.setVisibility(View.VISIBLE);
+    interface Listener {
+        void onTrigger();
     }
 
-    @Override
-    public void onClick(View v) {
-        inMotion = !inMotion;
-        ((Button) v).setText(inMotion ? "Emulator override motion enabled" : "Emulator override motion disabled");
-        MainActivity activity = MainActivity.getInstance();
-        if(activity == null) return;
-        activity.onMotionChanged(inMotion);
-    }
+    /**
+     * @return false if the device has no such signal, in which case there is no point in arming it
+     */
+    boolean isAvailable();
 
-    @Override
-    void tick() {}
+    /**
+     * Starts waiting for the trigger. The listener is called at most once per call to this method.
+     */
+    void arm(Listener listener);
+
+    void disarm();
 
-    @Override
-    public boolean isInMotion() {
-        return inMotion;
-    }
 }
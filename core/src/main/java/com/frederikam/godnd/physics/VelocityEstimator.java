@@ -0,0 +1,216 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+/**
+ * Streaming estimate of the device's velocity from accelerometer and (optionally) gyroscope samples.
+ * <p>
+ * Gravity is tracked with a complementary filter: the gyroscope rotates the previous estimate along with the device,
+ * and the accelerometer slowly pulls it back to prevent drift. Without a gyroscope the estimate is a faster low-pass of
+ * the accelerometer. Either way the accelerometer is left out while it has been measuring more than gravity for a
+ * while, or the device is turning, so a car that keeps accelerating doesn't have its acceleration absorbed into
+ * gravity. Velocity is integrated from the remaining linear acceleration and is rotated along with the device as well,
+ * so turning the phone doesn't look like acceleration.
+ * <p>
+ * Integration drift is kept in check by a slow leak towards zero, and by resetting the velocity entirely once the
+ * device has been perfectly still for a while. Every update is O(1) and nothing is allocated.
+ */
+class VelocityEstimator {
+
+    private static final double GRAVITY_TIME_CONSTANT_GYRO = 20; // s, when the gyroscope keeps the estimate aligned
+    private static final double GRAVITY_TIME_CONSTANT_SWINGING = 2; // s, when the device is swung around, as in a hand
+    private static final double GRAVITY_TIME_CONSTANT = 0.5; // s, when only the accelerometer is available
+    private static final double GRAVITY_TOLERANCE = 0.15; // m/s^2, of the average magnitude off gravity
+    private static final double GRAVITY_MAX_ACCELERATION = 0.3; // m/s^2, average with a gyroscope
+    private static final double GRAVITY_MAX_ROTATION = 0.2; // rad/s, average
+    private static final double SWINGING_ROTATION = 0.2; // rad/s, RMS
+    private static final double GRAVITY_MAX_REJECTION = 20; // s, no car accelerates or turns for longer
+    private static final double AVERAGE_TIME_CONSTANT = 3; // s, of the averages the correction is gated on
+    private static final double LEAK_TIME_CONSTANT = 300; // s
+    private static final double STILL_ACCELERATION = 0.1; // m/s^2
+    private static final double STILL_ROTATION = 0.05; // rad/s
+    private static final long STILL_DURATION = 2000000000L; // ns
+    private static final double MAX_STEP = 1; // s, longer gaps are treated as a restart
+
+    // Gravity in the device's frame
+    private double gravityX, gravityY, gravityZ;
+    private boolean hasGravity = false;
+    private double gravityAge = 0; // s, of samples averaged into the estimate
+    private double gravityRejected = 0; // s, since the accelerometer last looked like it was only measuring gravity
+    // Average of what the accelerometer measures beyond gravity
+    private double meanDeviation = 0; // m/s^2, in magnitude
+    private double averageX, averageY, averageZ; // m/s^2, with a gyroscope
+
+    private double velocityX, velocityY, velocityZ;
+
+    private long lastAcceleration = -1; // ns
+    private long lastRotation = -1; // ns
+    private boolean hasGyroscope = false;
+    private double rotationRate = 0; // rad/s, magnitude of the last gyroscope sample
+    private double turnX, turnY, turnZ; // rad/s, average rotation, in which a swaying hand cancels out but a turn doesn't
+    private double rotationEnergy = 0; // rad^2/s^2, average squared rotation rate, in which a swaying hand doesn't
+    private long stillSince = -1; // ns
+
+    /**
+     * @param includesGravity true for the raw accelerometer, false for the linear acceleration sensor
+     */
+    void onAcceleration(long timestamp, float x, float y, float z, boolean includesGravity) {
+        double dt = lastAcceleration < 0 ? 0 : (timestamp - lastAcceleration) / 1e9;
+        lastAcceleration = timestamp;
+        if (dt > MAX_STEP || dt < 0) dt = 0;
+
+        double ax = x, ay = y, az = z;
+        if (includesGravity) {
+            if (!hasGravity) {
+                gravityX = ax;
+                gravityY = ay;
+                gravityZ = az;
+                hasGravity = true;
+            } else if (isGravityOnly(ax, ay, az, dt) || gravityAge < timeConstant()) {
+                // Until the estimate has settled every sample is averaged in, rather than trusting the first one
+                gravityAge += dt;
+                double alpha = dt / (Math.min(timeConstant(), gravityAge) + dt);
+                gravityX += alpha * (ax - gravityX);
+                gravityY += alpha * (ay - gravityY);
+                gravityZ += alpha * (az - gravityZ);
+            }
+            ax -= gravityX;
+            ay -= gravityY;
+            az -= gravityZ;
+        }
+
+        velocityX += ax * dt;
+        velocityY += ay * dt;
+        velocityZ += az * dt;
+
+        double leak = 1 - dt / LEAK_TIME_CONSTANT;
+        velocityX *= leak;
+        velocityY *= leak;
+        velocityZ *= leak;
+
+        // Zero velocity update: if we're not accelerating or rotating at all, we are most likely lying still
+        boolean still = ax * ax + ay * ay + az * az < STILL_ACCELERATION * STILL_ACCELERATION
+                && (!hasGyroscope || rotationRate < STILL_ROTATION);
+        if (!still) {
+            stillSince = -1;
+        } else if (stillSince < 0) {
+            stillSince = timestamp;
+        } else if (timestamp - stillSince >= STILL_DURATION) {
+            velocityX = velocityY = velocityZ = 0;
+        }
+    }
+
+    private double timeConstant() {
+        if (!hasGyroscope) return GRAVITY_TIME_CONSTANT;
+        return isSwinging() ? GRAVITY_TIME_CONSTANT_SWINGING : GRAVITY_TIME_CONSTANT_GYRO;
+    }
+
+    /**
+     * @return whether the device is being swung around, which makes the gyroscope's errors pile up faster than a car
+     * could accelerate
+     */
+    private boolean isSwinging() {
+        return rotationEnergy > SWINGING_ROTATION * SWINGING_ROTATION;
+    }
+
+    /**
+     * @return whether the accelerometer sample looks like it is only measuring gravity, and can be used to correct
+     * the estimate
+     */
+    private boolean isGravityOnly(double ax, double ay, double az, double dt) {
+        double alpha = dt / (AVERAGE_TIME_CONSTANT + dt);
+        boolean gravityOnly;
+        if (hasGyroscope) {
+            // The gyroscope keeps the estimate aligned, so anything left over for a while is real acceleration. Not
+            // so while the device is swung around, when it is the estimate that falls behind.
+            averageX += alpha * (ax - gravityX - averageX);
+            averageY += alpha * (ay - gravityY - averageY);
+            averageZ += alpha * (az - gravityZ - averageZ);
+            gravityOnly = isSwinging() || averageX * averageX + averageY * averageY + averageZ * averageZ
+                    < GRAVITY_MAX_ACCELERATION * GRAVITY_MAX_ACCELERATION
+                    && turnX * turnX + turnY * turnY + turnZ * turnZ < GRAVITY_MAX_ROTATION * GRAVITY_MAX_ROTATION;
+        } else {
+            // Tilting the device looks just like accelerating it, apart from leaving the magnitude alone
+            double gravity = Math.sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ);
+            meanDeviation += alpha * (Math.sqrt(ax * ax + ay * ay + az * az) - gravity - meanDeviation);
+            gravityOnly = Math.abs(meanDeviation) < GRAVITY_TOLERANCE;
+        }
+
+        // Don't hold on to an estimate that has drifted off forever
+        gravityRejected = gravityOnly ? 0 : gravityRejected + dt;
+        return gravityOnly || gravityRejected > GRAVITY_MAX_REJECTION;
+    }
+
+    /**
+     * @param x rotation rate around the device's x axis in rad/s, as reported by the gyroscope
+     */
+    void onRotation(long timestamp, float x, float y, float z) {
+        double dt = lastRotation < 0 ? 0 : (timestamp - lastRotation) / 1e9;
+        lastRotation = timestamp;
+        if (dt > MAX_STEP || dt < 0) dt = 0;
+        hasGyroscope = true;
+        rotationRate = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+        double alpha = dt / (AVERAGE_TIME_CONSTANT + dt);
+        turnX += alpha * (x - turnX);
+        turnY += alpha * (y - turnY);
+        turnZ += alpha * (z - turnZ);
+        rotationEnergy += alpha * (rotationRate * rotationRate - rotationEnergy);
+
+        double angle = rotationRate * dt;
+        if (angle == 0) return;
+
+        // Vectors that are fixed in the world rotate the opposite way in the device's frame
+        double cos = Math.cos(angle);
+        double sin = Math.sin(-angle);
+        double kx = x / rotationRate, ky = y / rotationRate, kz = z / rotationRate;
+
+        double gx = gravityX, gy = gravityY, gz = gravityZ;
+        double dot = kx * gx + ky * gy + kz * gz;
+        gravityX = gx * cos + (ky * gz - kz * gy) * sin + kx * dot * (1 - cos);
+        gravityY = gy * cos + (kz * gx - kx * gz) * sin + ky * dot * (1 - cos);
+        gravityZ = gz * cos + (kx * gy - ky * gx) * sin + kz * dot * (1 - cos);
+
+        double vx = velocityX, vy = velocityY, vz = velocityZ;
+        dot = kx * vx + ky * vy + kz * vz;
+        velocityX = vx * cos + (ky * vz - kz * vy) * sin + kx * dot * (1 - cos);
+        velocityY = vy * cos + (kz * vx - kx * vz) * sin + ky * dot * (1 - cos);
+        velocityZ = vz * cos + (kx * vy - ky * vx) * sin + kz * dot * (1 - cos);
+    }
+
+    /**
+     * @return the estimated speed in m/s
+     */
+    double getSpeed() {
+        return Math.sqrt(velocityX * velocityX + velocityY * velocityY + velocityZ * velocityZ);
+    }
+
+    /**
+     * Forgets the time of the previous samples, so a gap in the stream isn't integrated over
+     */
+    void pause() {
+        lastAcceleration = -1;
+        lastRotation = -1;
+        stillSince = -1;
+    }
+
+}
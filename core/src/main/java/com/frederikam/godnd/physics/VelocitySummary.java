@@ -22,36 +22,35 @@
 
 package com.frederikam.godnd.physics;
 
-import android.util.Log;
-
-import static com.frederikam.godnd.MainActivity.TAG;
-
-public abstract class MotionManager extends Thread {
+/**
+ * Velocities seen by a tracker over one motion session
+ */
+public final class VelocitySummary {
 
-    private static final int SLEEP_INTERVAL = 500; // ms
+    private final int samples;
+    private final double mean; // m/s
+    private final double peak; // m/s
 
-    MotionManager(String name) {
-        setDaemon(true);
-        setName(name);
+    VelocitySummary(int samples, double mean, double peak) {
+        this.samples = samples;
+        this.mean = mean;
+        this.peak = peak;
     }
 
-    @Override
-    public void run() {
-        Log.i(TAG, "Started " + getName());
-        //noinspection InfiniteLoopStatement
-        while (true) {
-            try {
-                sleep(SLEEP_INTERVAL);
-                tick();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
+    public int getSamples() {
+        return samples;
     }
 
-    abstract void tick();
-
-    public abstract boolean isInMotion();
+    public double getMean() {
+        return mean;
+    }
 
+    public double getPeak() {
+        return peak;
+    }
 
+    @Override
+    public String toString() {
+        return "VelocitySummary{samples=" + samples + ", mean=" + mean + ", peak=" + peak + "}";
+    }
 }
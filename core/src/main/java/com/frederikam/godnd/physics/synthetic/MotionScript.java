@@ -0,0 +1,198 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.synthetic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A scripted day in the life of a phone, played by {@link SyntheticSensorSource}. Steps are separated by commas,
+ * semicolons or new lines, and everything after a # is a comment:
+ * <pre>
+ * still 30 s                   lying on a table
+ * walk 60 s                    carried in a hand or pocket
+ * accelerate to 50 km/h        at 2.5 m/s^2, or "over 10 s". Also slows down to lower speeds
+ * cruise 2 min                 at the current speed, on a bumpy road
+ * turn left 90 deg             at 0.3 rad/s, or "over 5 s"
+ * stop                         at 3 m/s^2, or "over 5 s"
+ * stop at a light              a stop, followed by waiting 45 s, or "for 20 s"
+ * wait 20 s                    sitting in a car that isn't moving
+ * </pre>
+ * Durations are in ms, s or min, speeds in km/h, m/s or mph and angles in degrees.
+ */
+public final class MotionScript {
+
+    private static final String NUMBER = "(\\d+(?:\\.\\d+)?)\\s*";
+    private static final String DURATION = NUMBER + "(ms|s|sec|seconds?|min|minutes?)";
+    private static final String SPEED = NUMBER + "(km/h|kmh|m/s|mph)";
+    private static final String ANGLE = NUMBER + "(deg|degrees?)";
+
+    private static final Pattern STILL = Pattern.compile("(?:still|stationary) (?:for )?" + DURATION);
+    private static final Pattern WALK = Pattern.compile("walk (?:for )?" + DURATION);
+    private static final Pattern ACCELERATE = Pattern.compile("(?:accelerate|decelerate|slow down) to " + SPEED + "(?: over " + DURATION + ")?");
+    private static final Pattern CRUISE = Pattern.compile("cruise (?:for )?" + DURATION);
+    private static final Pattern TURN = Pattern.compile("turn (left|right) " + ANGLE + "(?: over " + DURATION + ")?");
+    private static final Pattern STOP = Pattern.compile("stop(?: over " + DURATION + ")?");
+    private static final Pattern STOP_AT_LIGHT = Pattern.compile("stop at a (?:red )?light(?: for " + DURATION + ")?");
+    private static final Pattern WAIT = Pattern.compile("wait (?:for )?" + DURATION);
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long LIGHT_DURATION = 45 * NANOS_PER_SECOND;
+
+    private final List<Step> steps;
+    private final String source;
+
+    private MotionScript(List<Step> steps, String source) {
+        this.steps = Collections.unmodifiableList(steps);
+        this.source = source;
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the step that couldn't be understood
+     */
+    public static MotionScript parse(String script) {
+        List<Step> steps = new ArrayList<>();
+        int lineNumber = 0;
+
+        for (String line : script.split("\n")) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+
+            for (String statement : line.split("[,;]")) {
+                String normalized = statement.trim().toLowerCase(Locale.US).replaceAll("\\s+", " ");
+                if (normalized.isEmpty()) continue;
+                parseStep(normalized, steps, lineNumber);
+            }
+        }
+
+        if (steps.isEmpty()) throw new IllegalArgumentException("Script has no steps");
+        return new MotionScript(steps, script);
+    }
+
+    private static void parseStep(String statement, List<Step> steps, int lineNumber) {
+        Matcher m;
+        if ((m = STILL.matcher(statement)).matches()) {
+            steps.add(new Step(Step.STILL, duration(m, 1), 0, 0));
+        } else if ((m = WALK.matcher(statement)).matches()) {
+            steps.add(new Step(Step.WALK, duration(m, 1), 0, 0));
+        } else if ((m = ACCELERATE.matcher(statement)).matches()) {
+            steps.add(new Step(Step.ACCELERATE, duration(m, 3), speed(m, 1), 0));
+        } else if ((m = CRUISE.matcher(statement)).matches()) {
+            steps.add(new Step(Step.CRUISE, duration(m, 1), 0, 0));
+        } else if ((m = TURN.matcher(statement)).matches()) {
+            double angle = Math.toRadians(Double.parseDouble(m.group(2)));
+            steps.add(new Step(Step.TURN, duration(m, 4), 0, m.group(1).equals("left") ? angle : -angle));
+        } else if ((m = STOP.matcher(statement)).matches()) {
+            steps.add(new Step(Step.ACCELERATE, duration(m, 1), 0, 0));
+        } else if ((m = STOP_AT_LIGHT.matcher(statement)).matches()) {
+            long wait = duration(m, 1);
+            steps.add(new Step(Step.ACCELERATE, -1, 0, 0));
+            steps.add(new Step(Step.WAIT, wait < 0 ? LIGHT_DURATION : wait, 0, 0));
+        } else if ((m = WAIT.matcher(statement)).matches()) {
+            steps.add(new Step(Step.WAIT, duration(m, 1), 0, 0));
+        } else {
+            throw new IllegalArgumentException("Can't understand \"" + statement + "\" on line " + lineNumber);
+        }
+    }
+
+    /**
+     * @return the duration in ns starting at the given group, or -1 if it was left out
+     */
+    private static long duration(Matcher m, int group) {
+        if (m.group(group) == null) return -1;
+        double value = Double.parseDouble(m.group(group));
+        String unit = m.group(group + 1);
+        if (unit.equals("ms")) {
+            value /= 1000;
+        } else if (unit.startsWith("min")) {
+            value *= 60;
+        }
+        return (long) (value * NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return the speed in m/s starting at the given group
+     */
+    private static double speed(Matcher m, int group) {
+        double value = Double.parseDouble(m.group(group));
+        String unit = m.group(group + 1);
+        if (unit.equals("m/s")) return value;
+        if (unit.equals("mph")) return value * 0.44704;
+        return value / 3.6;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * One step of a script. Steps that are left without a duration take as long as they need at a typical rate.
+     */
+    public static final class Step {
+
+        public static final int STILL = 0;
+        public static final int WALK = 1;
+        public static final int ACCELERATE = 2;
+        public static final int CRUISE = 3;
+        public static final int TURN = 4;
+        public static final int WAIT = 5;
+
+        final int kind;
+        final long duration; // ns, or -1
+        final double speed; // m/s, what to accelerate to
+        final double angle; // rad, counter-clockwise seen from above
+
+        Step(int kind, long duration, double speed, double angle) {
+            this.kind = kind;
+            this.duration = duration;
+            this.speed = speed;
+            this.angle = angle;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the duration in ns, or -1 if the step takes as long as it needs
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return "Step{kind=" + kind + ", duration=" + duration + ", speed=" + speed + ", angle=" + angle + "}";
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.synthetic;
+
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.SensorType;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays a {@link MotionScript} as acceleration and gyroscope samples, so the real trackers and managers can be driven
+ * without a device. The phone lies flat with its x axis pointing forward, and the samples carry the noise of a phone
+ * on a table, in a hand or on a bumpy road.
+ * <p>
+ * Time only passes when it is asked to. {@link #run()} plays the whole script as fast as possible on the calling
+ * thread, while {@link #advance(long)} lets a caller pace it in real time. Not thread safe, and nothing is allocated
+ * per sample, so scripts can be played at several kHz for hours.
+ */
+public class SyntheticSensorSource implements SensorSource {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final double GRAVITY = 9.80665; // m/s^2
+    private static final int MIN_SAMPLING_PERIOD = 100; // us, 10 kHz
+
+    // Rates of the steps that are left without a duration
+    private static final double ACCELERATION = 2.5; // m/s^2
+    private static final double BRAKING = 3; // m/s^2
+    private static final double TURN_RATE = 0.3; // rad/s
+
+    // Noise, as standard deviations
+    private static final double SENSOR_NOISE = 0.02; // m/s^2
+    private static final double GYROSCOPE_NOISE = 0.002; // rad/s
+    private static final double ROAD_NOISE = 0.1; // m/s^2, plus ROAD_NOISE_PER_SPEED for every m/s
+    private static final double ROAD_NOISE_PER_SPEED = 0.01;
+    private static final double ENGINE_NOISE = 0.05; // m/s^2, while waiting in a car
+
+    private final List<MotionScript.Step> steps;
+    private final Random random;
+    private final int accelerationType;
+    private SampleListener listener = null;
+    private int samplingPeriod = 20000; // us
+    private boolean fixedRate = false;
+    private boolean looping = false;
+
+    // Where we are in the script
+    private int stepIndex = -1;
+    private long stepStart; // ns
+    private long stepEnd; // ns
+    private long time = 0; // ns, of the next sample
+    private double speed = 0; // m/s
+    private double stepStartSpeed; // m/s
+    private double acceleration; // m/s^2, forward during the current step
+    private double turnRate; // rad/s, during the current step
+    private double stepRate; // Hz, of the current walk
+    private double stepAmplitude; // m/s^2, of the current walk
+
+    /**
+     * @param includeGravity true to produce {@link SensorType#ACCELEROMETER} samples, false to produce
+     *                       {@link SensorType#LINEAR_ACCELERATION} samples
+     * @param seed           the noise is deterministic for a given seed
+     */
+    public SyntheticSensorSource(MotionScript script, boolean includeGravity, long seed) {
+        this.steps = script.getSteps();
+        this.accelerationType = includeGravity ? SensorType.ACCELEROMETER : SensorType.LINEAR_ACCELERATION;
+        this.random = new Random(seed);
+        restart();
+    }
+
+    @Override
+    public void start(SampleListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+    }
+
+    @Override
+    public void setSamplingPeriod(int samplingPeriodUs) {
+        if (fixedRate) return;
+        samplingPeriod = Math.max(MIN_SAMPLING_PERIOD, samplingPeriodUs);
+    }
+
+    /**
+     * Samples at the given rate no matter what the listener asks for, such as for stress tests
+     */
+    public void setFixedRate(int hz) {
+        samplingPeriod = Math.max(MIN_SAMPLING_PERIOD, 1000000 / hz);
+        fixedRate = true;
+    }
+
+    /**
+     * @param looping whether to start over once the script has been played, instead of finishing
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * Starts the script over, lying still
+     */
+    public void restart() {
+        stepIndex = -1;
+        speed = 0;
+        nextStep(time);
+    }
+
+    /**
+     * @return the time of the next sample in ns
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isFinished() {
+        return stepIndex >= steps.size();
+    }
+
+    /**
+     * Plays the whole script as fast as possible
+     *
+     * @return the number of samples delivered
+     */
+    public long run() {
+        if (looping) throw new IllegalStateException("A looping script never finishes");
+        return advance(Long.MAX_VALUE - time);
+    }
+
+    /**
+     * Plays the next part of the script, delivering every sample in it back to back like a batch
+     *
+     * @param nanos how much time to play
+     * @return the number of samples delivered
+     * @throws IllegalStateException if looping a script that takes no time, which would never get anywhere
+     */
+    public long advance(long nanos) {
+        long end = time + nanos;
+        long samples = 0;
+
+        while (time < end && listener != null && !isFinished()) {
+            int emptySteps = 0;
+            while (time >= stepEnd) {
+                long start = stepEnd;
+                nextStep(start);
+                if (isFinished()) return samples;
+                // Steps such as a stop while standing still take no time, which is fine unless all of them do
+                emptySteps = stepEnd == start ? emptySteps + 1 : 0;
+                if (emptySteps > steps.size()) {
+                    throw new IllegalStateException("A looping script must take some time");
+                }
+            }
+            samples += sample();
+            time += samplingPeriod * 1000L;
+        }
+
+        return samples;
+    }
+
+    private void nextStep(long start) {
+        if (stepIndex >= 0 && stepIndex < steps.size() && steps.get(stepIndex).kind == MotionScript.Step.ACCELERATE) {
+            // Don't carry the rounding of the last sample over
+            speed = steps.get(stepIndex).speed;
+        }
+        stepIndex++;
+        if (stepIndex >= steps.size() && looping) {
+            stepIndex = 0;
+            speed = 0;
+        }
+        if (isFinished()) return;
+
+        MotionScript.Step step = steps.get(stepIndex);
+        stepStart = start;
+        stepStartSpeed = speed;
+        acceleration = 0;
+        turnRate = 0;
+        long duration = step.duration;
+
+        switch (step.kind) {
+            case MotionScript.Step.STILL:
+                // Out of the car
+                speed = stepStartSpeed = 0;
+                break;
+            case MotionScript.Step.WALK:
+                speed = stepStartSpeed = 0;
+                stepRate = 1.6 + random.nextDouble() * 0.6;
+                if (duration > 0) {
+                    // Sway a whole number of times, so the phone ends up lying flat again without turning
+                    double seconds = (double) duration / NANOS_PER_SECOND;
+                    stepRate = 2 * Math.max(1, Math.round(seconds * stepRate / 2)) / seconds;
+                }
+                stepAmplitude = 1 + random.nextDouble() * 2;
+                break;
+            case MotionScript.Step.ACCELERATE:
+                double difference = step.speed - speed;
+                if (duration < 0) {
+                    double rate = difference >= 0 ? ACCELERATION : BRAKING;
+                    duration = (long) (Math.abs(difference) / rate * NANOS_PER_SECOND);
+                }
+                acceleration = duration == 0 ? 0 : difference / duration * NANOS_PER_SECOND;
+                break;
+            case MotionScript.Step.TURN:
+                if (duration < 0) {
+                    duration = (long) (Math.abs(step.angle) / TURN_RATE * NANOS_PER_SECOND);
+                }
+                turnRate = duration == 0 ? 0 : step.angle / duration * NANOS_PER_SECOND;
+                break;
+            case MotionScript.Step.WAIT:
+                speed = stepStartSpeed = 0;
+                break;
+            default:
+                break;
+        }
+
+        stepEnd = start + duration;
+    }
+
+    /**
+     * @return the number of samples delivered
+     */
+    private int sample() {
+        MotionScript.Step step = steps.get(stepIndex);
+        double elapsed = (double) (time - stepStart) / NANOS_PER_SECOND;
+        speed = stepStartSpeed + acceleration * elapsed;
+
+        // In the frame of the car or the walker, which is also the phone's until it is tilted below
+        double ax = acceleration, ay = speed * turnRate, az = 0;
+        double gx = 0, gy = 0, gz = turnRate;
+        double tiltX = 0, tiltY = 0; // rad
+        double noise;
+
+        switch (step.kind) {
+            case MotionScript.Step.STILL:
+                noise = SENSOR_NOISE;
+                break;
+            case MotionScript.Step.WALK:
+                // Bouncing with every step, and the sway of the body at half the step rate
+                double phase = 2 * Math.PI * stepRate * elapsed;
+                double sway = 0.1 * Math.sin(phase / 2); // rad
+                double swayRate = 0.1 * Math.PI * stepRate * Math.cos(phase / 2); // rad/s
+                ax = 0.5 * stepAmplitude * Math.sin(phase);
+                ay = 0.3 * stepAmplitude * Math.sin(phase / 2);
+                az = stepAmplitude * Math.cos(phase);
+                tiltX = sway;
+                tiltY = 0.5 * sway;
+                gx = swayRate * Math.cos(tiltY);
+                gy = 0.5 * swayRate;
+                gz = swayRate * Math.sin(tiltY);
+                noise = SENSOR_NOISE + 0.3;
+                break;
+            case MotionScript.Step.WAIT:
+                noise = ENGINE_NOISE;
+                break;
+            default:
+                noise = ROAD_NOISE + ROAD_NOISE_PER_SPEED * speed;
+                break;
+        }
+
+        if (accelerationType == SensorType.ACCELEROMETER) {
+            az += GRAVITY;
+        }
+        if (tiltX != 0 || tiltY != 0) {
+            // Into the phone's frame, tilted around x and then around the tilted y axis to match the gyroscope
+            double cosX = Math.cos(tiltX), sinX = Math.sin(tiltX);
+            double cosY = Math.cos(tiltY), sinY = Math.sin(tiltY);
+            double y = cosX * ay + sinX * az;
+            double z = cosX * az - sinX * ay;
+            ay = y;
+            az = cosY * z + sinY * ax;
+            ax = cosY * ax - sinY * z;
+        }
+
+        ax += random.nextGaussian() * noise;
+        ay += random.nextGaussian() * noise;
+        az += random.nextGaussian() * noise;
+
+        gx += random.nextGaussian() * GYROSCOPE_NOISE;
+        gy += random.nextGaussian() * GYROSCOPE_NOISE;
+        gz += random.nextGaussian() * GYROSCOPE_NOISE;
+
+        // The listener may stop us in between
+        SampleListener listener = this.listener;
+        listener.onSample(time, accelerationType, (float) ax, (float) ay, (float) az);
+        listener = this.listener;
+        if (listener == null) return 1;
+        listener.onSample(time, SensorType.GYROSCOPE, (float) gx, (float) gy, (float) gz);
+        return 2;
+    }
+
+}
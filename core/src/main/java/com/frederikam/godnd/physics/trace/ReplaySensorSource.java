@@ -0,0 +1,103 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.trace;
+
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a trace written by {@link TraceRecorder} as fast as possible.
+ * The trace is memory mapped in large chunks, so even traces of many hours replay without any parsing overhead.
+ */
+public class ReplaySensorSource implements SensorSource {
+
+    // A single mapping can't exceed 2 GiB, so larger traces are mapped a chunk at a time
+    private static final long CHUNK_SIZE = (64L * 1024 * 1024 / TraceFormat.RECORD_SIZE) * TraceFormat.RECORD_SIZE;
+
+    private final File file;
+    private SampleListener listener = null;
+
+    public ReplaySensorSource(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void start(SampleListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+    }
+
+    @Override
+    public void setSamplingPeriod(int samplingPeriodUs) {
+        // A trace is replayed at the rate it was recorded
+    }
+
+    /**
+     * Pushes every sample in the trace to the listener on the calling thread.
+     *
+     * @return the number of samples replayed
+     */
+    public long replay() throws IOException {
+        if (listener == null) {
+            throw new IllegalStateException("Replay has not been started");
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            TraceFormat.readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, TraceFormat.HEADER_SIZE)));
+
+            long records = 0;
+            long position = TraceFormat.HEADER_SIZE;
+            // Ignore a trailing partial record, which is left behind if the recorder was killed
+            long end = position + (size - position) / TraceFormat.RECORD_SIZE * TraceFormat.RECORD_SIZE;
+
+            while (position < end && listener != null) {
+                long length = Math.min(CHUNK_SIZE, end - position);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                while (chunk.hasRemaining() && listener != null) {
+                    listener.onSample(chunk.getLong(), chunk.getInt(), chunk.getFloat(), chunk.getFloat(), chunk.getFloat());
+                    records++;
+                }
+
+                position += length;
+            }
+
+            return records;
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.trace;
+
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sits between a {@link SensorSource} and its listener and writes every sample to a trace file.
+ * Samples are passed on unchanged, so recording doesn't affect detection.
+ * <p>
+ * Samples are collected in buffers that are written to disk on a background thread, so the sensor thread never waits
+ * for the file. The file is opened by the first start, and one recorder keeps appending to it across restarts until it
+ * is closed.
+ */
+public class TraceRecorder implements SensorSource, SampleListener {
+
+    private static final int BUFFERED_RECORDS = 256;
+    private static final int SPARE_BUFFERS = 4;
+
+    private final SensorSource source;
+    private final File file;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GoDND-trace");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // Buffers the writer is done with, so we don't allocate a new one every few seconds
+    private final BlockingQueue<ByteBuffer> spare = new ArrayBlockingQueue<>(SPARE_BUFFERS);
+    private ByteBuffer buffer = null; // Being filled while we are started
+    private SampleListener listener = null;
+    private boolean closed = false;
+    private FileChannel channel = null; // Only touched by the writer
+    private volatile IOException error = null;
+
+    private final Runnable openRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (channel != null || error != null) return;
+
+            try {
+                channel = new FileOutputStream(file).getChannel();
+                ByteBuffer header = ByteBuffer.allocate(TraceFormat.HEADER_SIZE);
+                TraceFormat.writeHeader(header);
+                header.flip();
+                write(header);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    };
+
+    public TraceRecorder(SensorSource source, File file) {
+        this.source = source;
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void start(SampleListener listener) {
+        if (closed) {
+            throw new IllegalStateException("Recorder has been closed");
+        }
+        this.listener = listener;
+        buffer = takeBuffer();
+        writer.execute(openRunnable);
+
+        source.start(this);
+    }
+
+    @Override
+    public synchronized void stop() {
+        source.stop();
+
+        if (buffer == null) return;
+        submit(buffer);
+        buffer = null;
+    }
+
+    /**
+     * Stops recording for good, and waits for everything recorded so far to reach the file
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) return;
+            stop();
+            closed = true;
+        }
+
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (channel == null) return;
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    fail(e);
+                }
+                channel = null;
+            }
+        });
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void setSamplingPeriod(int samplingPeriodUs) {
+        source.setSamplingPeriod(samplingPeriodUs);
+    }
+
+    @Override
+    public synchronized void onSample(long timestamp, int sensorType, float x, float y, float z) {
+        if (buffer != null && error == null) {
+            buffer.putLong(timestamp)
+                    .putInt(sensorType)
+                    .putFloat(x)
+                    .putFloat(y)
+                    .putFloat(z);
+
+            if (buffer.remaining() < TraceFormat.RECORD_SIZE) {
+                submit(buffer);
+                buffer = takeBuffer();
+            }
+        }
+
+        listener.onSample(timestamp, sensorType, x, y, z);
+    }
+
+    private ByteBuffer takeBuffer() {
+        ByteBuffer buffer = spare.poll();
+        // The writer is behind. Rather than waiting for it, we hold on to a little more memory.
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFERED_RECORDS * TraceFormat.RECORD_SIZE);
+    }
+
+    private void submit(final ByteBuffer buffer) {
+        buffer.flip();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (channel != null) {
+                    try {
+                        write(buffer);
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+                buffer.clear();
+                spare.offer(buffer);
+            }
+        });
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Stops recording, but keeps passing samples on. Only called by the writer.
+     */
+    private void fail(IOException e) {
+        error = e;
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+    }
+
+    /**
+     * @return the error that stopped the recording, if any
+     */
+    public IOException getError() {
+        return error;
+    }
+}
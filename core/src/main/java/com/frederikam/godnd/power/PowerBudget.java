@@ -0,0 +1,303 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.power;
+
+import com.frederikam.godnd.metrics.Clock;
+import com.frederikam.godnd.metrics.Gauge;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimates how much charge the motion pipeline costs and degrades it when it goes over budget. The estimate adds up:
+ * <pre>
+ * sensors: the rated current of the sampled sensors, scaled by how busy our sampling rate keeps them
+ * wakeups: waking the CPU for each delivery of sensor events, or keeping it awake if they aren't batched
+ * events:  handling each sensor event
+ * ticks:   the CPU time our managers take to decide, as measured
+ * binder:  the calls DND changes make to the system
+ * </pre>
+ * The figures for everything but the sensors are rough, and err on the high side.
+ * <p>
+ * Charge is kept in one minute buckets covering the last hour. Decisions are made on the last few minutes so that a
+ * degradation shows up quickly, while {@link #getHourlyEstimate()} reports the whole hour.
+ * <p>
+ * Safe to call from any thread. Events, CPU time and binder calls are counted without locking, and are added to the
+ * current minute when it closes. Listeners are called on whichever thread closed the minute.
+ */
+public class PowerBudget {
+
+    public static final int LEVEL_FULL = 0;
+    // Never sample faster than REDUCED_SAMPLING_PERIOD
+    public static final int LEVEL_REDUCED_RATE = 1;
+    // As well, switch the sensors off LOW_POWER_QUIET_PERIOD after we stop moving, and wait for the low power trigger.
+    // Giving up on the gyroscope would save more, but without one we can't tell driving from walking.
+    public static final int LEVEL_LOW_POWER = 2;
+    private static final int LOWEST_LEVEL = LEVEL_LOW_POWER;
+
+    public static final int REDUCED_SAMPLING_PERIOD = 66667; // us, 15 Hz
+    public static final long LOW_POWER_QUIET_PERIOD = 15 * 1000000000L; // ns
+    public static final double DEFAULT_BUDGET = 15; // mAh per hour
+
+    private static final long MINUTE = 60 * 1000000000L; // ns
+    private static final int BUCKETS = 60;
+    private static final int DECISION_BUCKETS = 5;
+    // How long a level must have been in effect before we degrade further, or before we try to restore
+    private static final long DEGRADE_AFTER = DECISION_BUCKETS * MINUTE;
+    private static final long RESTORE_AFTER = 30 * MINUTE;
+    // Only restore once a level uses less than this share of the budget, so that we don't flap between levels
+    private static final double RESTORE_BELOW = 0.5;
+
+    // Charge estimates in mAs
+    private static final double CPU_CURRENT = 100; // mA, one core running our code
+    private static final double AWAKE_CURRENT = 5; // mA, an idle core kept from suspending between deliveries
+    private static final double WAKEUP_CHARGE = 0.5; // Resuming from suspend and going back
+    private static final double EVENT_CHARGE = 0.002;
+    private static final double BINDER_CHARGE = 0.05;
+    // Share of a sensor's rated current it draws however slowly it is sampled
+    private static final double SENSOR_IDLE_SHARE = 0.2;
+
+    private static volatile PowerBudget instance = new PowerBudget(MetricsRegistry.DEFAULT, DEFAULT_BUDGET);
+
+    private final Clock clock;
+    private final double budget; // mAh per hour
+    private final Gauge hourlyGauge;
+    private final Gauge levelGauge;
+    private volatile Listener listener = null;
+
+    // Not yet added to the current minute
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong pendingCpuTime = new AtomicLong(); // ns
+    private final AtomicLong pendingBinderCalls = new AtomicLong();
+
+    private final double[] buckets = new double[BUCKETS + 1]; // mAs, the last hour and the current minute
+    private int bucket = 0;
+    private int filled = 0; // Closed buckets
+    private volatile long bucketEnd; // ns
+    private double sensorCurrent = 0; // mA, including wakeups
+    private long sensorCurrentSince; // ns
+    private int level = LEVEL_FULL;
+    private long levelSince; // ns
+
+    public interface Listener {
+        void onLevelChanged(int level);
+    }
+
+    /**
+     * @param budget in mAh per hour
+     */
+    public PowerBudget(MetricsRegistry registry, double budget) {
+        this.clock = registry.getClock();
+        this.budget = budget;
+        hourlyGauge = registry.gauge("power.hourly_uah");
+        levelGauge = registry.gauge("power.level");
+
+        long now = clock.nanoTime();
+        bucketEnd = now + MINUTE;
+        sensorCurrentSince = now;
+        levelSince = now;
+    }
+
+    public static PowerBudget get() {
+        return instance;
+    }
+
+    /**
+     * Replaces the instance the pipeline reports to
+     */
+    public static void set(PowerBudget budget) {
+        instance = budget;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sensors are rated for sampling as fast as they can. Sampled more slowly, they spend part of the time idle.
+     *
+     * @param minDelayUs       the sensor's shortest sampling period, or 0 if it only reports changes
+     * @param samplingPeriodUs the period we sample it at
+     * @return the share of the sensor's rated current it draws
+     */
+    public static double dutyCycle(int minDelayUs, int samplingPeriodUs) {
+        if (minDelayUs <= 0 || samplingPeriodUs <= minDelayUs) return 1;
+        return SENSOR_IDLE_SHARE + (1 - SENSOR_IDLE_SHARE) * minDelayUs / samplingPeriodUs;
+    }
+
+    /**
+     * @param current          the combined current of the sensors we are sampling continuously, scaled by their
+     *                         {@link #dutyCycle duty cycle}, in mA. 0 once stopped.
+     * @param deliveryPeriodUs how often the sensor events are delivered, which is the report latency if the sensor hub
+     *                         batches them in its FIFO and the sampling period if it doesn't. 0 once stopped.
+     */
+    public void setSensorCurrent(double current, long deliveryPeriodUs) {
+        int changedTo;
+        synchronized (this) {
+            changedTo = advance();
+            accrueSensors(clock.nanoTime());
+            sensorCurrent = current;
+            if (deliveryPeriodUs > 0) {
+                // Deliveries that come too quickly for the CPU to suspend in between just keep it awake
+                sensorCurrent += Math.min(WAKEUP_CHARGE * 1e6 / deliveryPeriodUs, AWAKE_CURRENT);
+            }
+        }
+        notifyLevel(changedTo);
+    }
+
+    /**
+     * A sensor event has been delivered to us
+     */
+    public void onSensorEvent() {
+        checkMinute();
+        pendingEvents.incrementAndGet();
+    }
+
+    /**
+     * @param nanos of CPU time spent deciding on a sample
+     */
+    public void onCpuTime(long nanos) {
+        checkMinute();
+        pendingCpuTime.addAndGet(nanos);
+    }
+
+    public void onBinderCalls(int calls) {
+        checkMinute();
+        pendingBinderCalls.addAndGet(calls);
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the budget in mAh per hour
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the charge used over the last hour in mAh, scaled up to an hour if we have been running for less
+     */
+    public double getHourlyEstimate() {
+        int changedTo;
+        double estimate;
+        synchronized (this) {
+            changedTo = advance();
+            estimate = project(filled);
+        }
+        notifyLevel(changedTo);
+        return estimate;
+    }
+
+    /**
+     * Closes the minute once it has passed, taking the lock only then
+     */
+    private void checkMinute() {
+        if (clock.nanoTime() < bucketEnd) return;
+        int changedTo;
+        synchronized (this) {
+            changedTo = advance();
+        }
+        notifyLevel(changedTo);
+    }
+
+    /**
+     * Closes every minute that has passed
+     *
+     * @return the level we changed to, or -1 if it stayed the same
+     */
+    private int advance() {
+        // Everything counted since the last call happened in the current minute, as counting closes it first
+        buckets[bucket] += pendingEvents.getAndSet(0) * EVENT_CHARGE
+                + CPU_CURRENT * pendingCpuTime.getAndSet(0) / 1e9
+                + pendingBinderCalls.getAndSet(0) * BINDER_CHARGE;
+
+        long now = clock.nanoTime();
+        if (now < bucketEnd) return -1;
+
+        int changedTo = -1;
+        while (now >= bucketEnd) {
+            accrueSensors(bucketEnd);
+            bucket = (bucket + 1) % buckets.length;
+            buckets[bucket] = 0;
+            filled = Math.min(filled + 1, BUCKETS);
+            bucketEnd += MINUTE;
+
+            int evaluated = evaluate(bucketEnd - MINUTE);
+            if (evaluated >= 0) changedTo = evaluated;
+        }
+
+        hourlyGauge.set((long) (project(filled) * 1000));
+        return changedTo;
+    }
+
+    private void accrueSensors(long until) {
+        if (until <= sensorCurrentSince) return;
+        buckets[bucket] += sensorCurrent * (until - sensorCurrentSince) / 1e9;
+        sensorCurrentSince = until;
+    }
+
+    /**
+     * @return the level we changed to, or -1 if it stayed the same
+     */
+    private int evaluate(long now) {
+        if (filled < DECISION_BUCKETS) return -1;
+        double recent = project(DECISION_BUCKETS);
+        long inEffect = now - levelSince;
+
+        if (recent > budget && level < LOWEST_LEVEL && inEffect >= DEGRADE_AFTER) {
+            level++;
+        } else if (recent < budget * RESTORE_BELOW && level > LEVEL_FULL && inEffect >= RESTORE_AFTER) {
+            level--;
+        } else {
+            return -1;
+        }
+
+        levelSince = now;
+        levelGauge.set(level);
+        return level;
+    }
+
+    /**
+     * @return the charge of the latest closed buckets in mAh, scaled up to an hour
+     */
+    private double project(int count) {
+        if (count == 0) return 0;
+        double sum = 0;
+        for (int i = 1; i <= count; i++) {
+            sum += buckets[(bucket - i + buckets.length) % buckets.length];
+        }
+        return sum / 3600 * BUCKETS / count;
+    }
+
+    private void notifyLevel(int level) {
+        if (level < 0) return;
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onLevelChanged(level);
+        }
+    }
+
+}
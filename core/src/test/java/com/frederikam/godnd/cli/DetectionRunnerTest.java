@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.cli;
+
+import com.frederikam.godnd.physics.MotionConfig;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class DetectionRunnerTest {
+
+    @Test
+    public void printsEveryDecision() throws Exception {
+        File script = File.createTempFile("drive", ".script");
+        script.deleteOnExit();
+        FileWriter writer = new FileWriter(script);
+        writer.write("still 30 s\naccelerate to 50 km/h, cruise 2 min # on the highway\nstop, still 2 min\n");
+        writer.close();
+
+        StringWriter output = new StringWriter();
+        DetectionRunner runner = new DetectionRunner(false, MotionConfig.LINEAR, 0, new PrintWriter(output, true));
+        assertTrue(runner.run(script) > 0);
+
+        String[] lines = output.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith(script.getName() + "\t"));
+        assertTrue(lines[0].endsWith("\tmotion"));
+        assertTrue(lines[1].endsWith("\tstill"));
+        assertTrue(lines[2].contains("2 changes"));
+    }
+
+    @Test
+    public void parsesConfigs() throws Exception {
+        MotionConfig config = DetectionRunner.parseConfig("6,1,20,250");
+        assertEquals(6, config.getThresholdHigh(), 0);
+        assertEquals(20, config.getMaxHistory());
+        assertTrue(config.isDecimating());
+        assertFalse(DetectionRunner.parseConfig("6,1,20,250,false").isDecimating());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncompleteConfigs() throws Exception {
+        DetectionRunner.parseConfig("6,1");
+    }
+
+}
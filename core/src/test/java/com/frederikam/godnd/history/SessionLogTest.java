@@ -0,0 +1,180 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.history;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionLogTest {
+
+    private File dir;
+    private SessionLog log; // Whichever log the test has open last
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("history", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (log != null) log.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void queriesRangesAcrossSegments() throws Exception {
+        log = new SessionLog(dir, 4);
+        // Sessions of 10 ms, every 100 ms
+        for (int i = 0; i < 20; i++) {
+            log.append(new Session(i * 100, i * 100 + 10, i, i, i, i, i));
+        }
+        log.close();
+
+        // Five segments of four
+        assertEquals(5, dir.list().length);
+
+        SessionLog reopened = new SessionLog(dir, 4);
+        log = reopened;
+        assertEquals(20, reopened.size());
+        assertEquals(asList(3, 4, 5, 6, 7), starts(reopened, 305, 705));
+        assertEquals(asList(0), starts(reopened, 0, 1));
+        assertEquals(asList(), starts(reopened, 11, 100));
+        assertEquals(asList(19), starts(reopened, 1905, 100000));
+
+        final int[] samples = {-1};
+        reopened.query(700, 701, new SessionLog.Visitor() {
+            @Override
+            public void onSession(long start, long end, long passengerTime, long dndTime,
+                                  float peakVelocity, float meanVelocity, int count) {
+                samples[0] = count;
+            }
+        });
+        assertEquals(7, samples[0]);
+        reopened.close();
+    }
+
+    @Test
+    public void dropsTornRecords() throws Exception {
+        log = new SessionLog(dir, 4);
+        log.append(new Session(0, 10, 0, 0, 0, 0, 0));
+        log.append(new Session(100, 110, 0, 0, 0, 0, 0));
+        log.close();
+
+        // Crash halfway through the second record
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(SessionLog.RECORD_SIZE + SessionLog.RECORD_SIZE / 2);
+        raf.close();
+
+        log = new SessionLog(dir, 4);
+        assertEquals(1, log.size());
+        log.append(new Session(200, 210, 0, 0, 0, 0, 0));
+        assertEquals(asList(0, 2), starts(log, 0, 1000));
+        log.close();
+    }
+
+    @Test
+    public void stopsAtTheFirstCorruptRecord() throws Exception {
+        log = new SessionLog(dir, 4);
+        for (int i = 0; i < 4; i++) {
+            log.append(new Session(i * 100, i * 100 + 10, 0, 0, 0, 0, 0));
+        }
+        log.close();
+
+        // Flip a bit in the second record
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.seek(SessionLog.RECORD_SIZE + 20);
+        int value = raf.read();
+        raf.seek(SessionLog.RECORD_SIZE + 20);
+        raf.write(value ^ 1);
+        raf.close();
+
+        log = new SessionLog(dir, 4);
+        assertEquals(1, log.size());
+        log.append(new Session(500, 510, 0, 0, 0, 0, 0));
+        log.close();
+
+        // The records after the corrupt one are gone for good, rather than coming back out of order
+        log = new SessionLog(dir, 4);
+        assertEquals(asList(0, 5), starts(log, 0, 1000));
+        log.close();
+    }
+
+    @Test
+    public void clampsSessionsWhenTheClockGoesBack() throws Exception {
+        log = new SessionLog(dir);
+        log.append(new Session(100, 110, 0, 0, 0, 0, 0));
+        log.append(new Session(50, 60, 0, 0, 0, 0, 0));
+        log.append(new Session(90, 200, 0, 0, 0, 0, 0));
+
+        final List<long[]> sessions = new ArrayList<>();
+        log.query(0, 1000, new SessionLog.Visitor() {
+            @Override
+            public void onSession(long start, long end, long passengerTime, long dndTime,
+                                  float peakVelocity, float meanVelocity, int samples) {
+                sessions.add(new long[]{start, end});
+            }
+        });
+        log.close();
+
+        assertEquals(3, sessions.size());
+        assertArrayEquals(new long[]{100, 110}, sessions.get(0));
+        assertArrayEquals(new long[]{110, 110}, sessions.get(1));
+        assertArrayEquals(new long[]{110, 200}, sessions.get(2));
+    }
+
+    private static List<Integer> starts(SessionLog log, long from, long to) throws Exception {
+        final List<Integer> starts = new ArrayList<>();
+        log.query(from, to, new SessionLog.Visitor() {
+            @Override
+            public void onSession(long start, long end, long passengerTime, long dndTime,
+                                  float peakVelocity, float meanVelocity, int samples) {
+                starts.add((int) (start / 100));
+            }
+        });
+        return starts;
+    }
+
+    private static List<Integer> asList(Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values) list.add(value);
+        return list;
+    }
+}
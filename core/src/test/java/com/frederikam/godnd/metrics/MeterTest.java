@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.metrics;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class MeterTest {
+
+    private long now = 0;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    };
+
+    @Test
+    public void countsEventsInTheLastSecond() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry(clock);
+        Meter meter = registry.meter("events");
+
+        // 50 Hz for a while
+        for (int i = 0; i < 200; i++) {
+            meter.mark();
+            now += 20000000L;
+        }
+
+        assertEquals(200, meter.getCount());
+        assertEquals(50, meter.getRate());
+
+        // Nothing for a few seconds
+        now += 5000000000L;
+        assertEquals(0, meter.getRate());
+
+        StringWriter out = new StringWriter();
+        registry.dump("", new PrintWriter(out));
+        assertEquals("events: 200 total, 0/s" + System.lineSeparator(), out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void namesAreUniqueAcrossTypes() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry(clock);
+        registry.counter("metric");
+        registry.meter("metric");
+    }
+}
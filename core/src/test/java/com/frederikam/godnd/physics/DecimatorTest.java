@@ -0,0 +1,103 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecimatorTest {
+
+    @Test
+    public void keepsOneOutputPerRatio() throws Exception {
+        Decimator decimator = new Decimator(3, 5);
+        int outputs = 0;
+        for (int i = 0; i < 100; i++) {
+            if (decimator.add(2)) outputs++;
+        }
+
+        assertEquals(20, outputs);
+        // A constant passes straight through, once the filter has filled
+        assertEquals(2, decimator.getOutput(), 1e-4);
+    }
+
+    @Test
+    public void removesWhatWouldAlias() throws Exception {
+        // A wave at exactly the output rate. Keeping every 25th sample would see a constant near 1, not the mean of 0.
+        int ratio = 25;
+        Decimator decimator = new Decimator(3, ratio);
+        double kept = 0;
+        for (int i = 0; i < 100 * ratio; i++) {
+            double value = Math.cos(2 * Math.PI * i / ratio);
+            if (decimator.add(value)) {
+                kept = value;
+            }
+        }
+
+        assertTrue(kept > 0.9);
+        assertEquals(0, decimator.getOutput(), 1e-3);
+    }
+
+    @Test
+    public void smoothsOutSpikes() throws Exception {
+        Decimator decimator = new Decimator(1, 10);
+        for (int i = 0; i < 9; i++) {
+            decimator.add(i == 4 ? 50 : 0);
+        }
+
+        assertTrue(decimator.add(0));
+        assertEquals(5, decimator.getOutput(), 1e-4);
+    }
+
+    @Test
+    public void doesNotDriftWhenIntegratorsOverflow() throws Exception {
+        Decimator decimator = new Decimator(4, 50);
+        // Enough to wrap the last integrator around many times
+        for (int i = 0; i < 5000000; i++) {
+            decimator.add(900 + (i % 7));
+        }
+
+        assertEquals(903, decimator.getOutput(), 0.01);
+    }
+
+    @Test
+    public void resetForgetsTheStream() throws Exception {
+        Decimator decimator = new Decimator(2, 4);
+        for (int i = 0; i < 40; i++) {
+            decimator.add(10);
+        }
+        decimator.reset();
+        for (int i = 0; i < 4; i++) {
+            decimator.add(10);
+        }
+
+        // The first output after a reset only sees part of the stream
+        assertTrue(decimator.getOutput() < 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatiosThatOverflow() throws Exception {
+        new Decimator(6, 1000);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import com.frederikam.godnd.metrics.Clock;
+import com.frederikam.godnd.metrics.DetectionLatency;
+import com.frederikam.godnd.metrics.Histogram;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionLatencyTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long MILLISECOND = 1000000L;
+    private static final long PERIOD = SECOND / 50;
+
+    private MetricsRegistry registry;
+    private DetectionLatency latency;
+    private long now = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new MetricsRegistry(new Clock() {
+            @Override
+            public long nanoTime() {
+                return now;
+            }
+        });
+        latency = new DetectionLatency(registry);
+    }
+
+    @Test
+    public void breaksDownLatencyPerStage() throws Exception {
+        final FakeSource source = new FakeSource();
+        LinearMotionManager manager = new LinearMotionManager(source);
+        manager.setDetectionLatency(latency);
+        manager.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean inMotion) {
+                // The manager has already marked the change. Waiting for the main thread takes 16 ms, and applying DND 40 ms
+                now += 16 * MILLISECOND;
+                latency.markDelivered();
+                latency.markRequested();
+                now += 40 * MILLISECOND;
+                latency.markApplied();
+                latency.markHandled();
+            }
+        });
+        manager.start();
+
+        // Our clock follows the sensor's, so the stages are all that add up
+        for (long time = 0; time < 20 * SECOND && !manager.isInMotion(); time += PERIOD) {
+            now = time;
+            source.listener.onSample(time, SensorType.LINEAR_ACCELERATION, 2, 0, 0);
+        }
+        assertTrue(manager.isInMotion());
+
+        Histogram decide = registry.histogram("latency.decide_us", Histogram.LATENCY_BOUNDS_US);
+        Histogram deliver = registry.histogram("latency.deliver_us", Histogram.LATENCY_BOUNDS_US);
+        Histogram apply = registry.histogram("latency.apply_us", Histogram.LATENCY_BOUNDS_US);
+        Histogram total = registry.histogram("latency.total_us", Histogram.LATENCY_BOUNDS_US);
+
+        assertEquals(1, decide.getCount());
+        assertEquals(0, decide.getMax());
+        assertEquals(1, deliver.getCount());
+        assertEquals(16000, deliver.getMax());
+        assertEquals(40000, apply.getMax());
+        assertEquals(56000, total.getMax());
+    }
+
+    @Test
+    public void dropsChangesThatAreNeverRequested() throws Exception {
+        // The app is disabled, so nobody requests DND
+        latency.markSample();
+        latency.markChanged();
+        latency.markDelivered();
+        latency.markHandled();
+
+        // The user enables the app a minute later, which isn't down to the change
+        now += 60 * SECOND;
+        latency.markRequested();
+        latency.markApplied();
+
+        Histogram total = registry.histogram("latency.total_us", Histogram.LATENCY_BOUNDS_US);
+        assertEquals(0, total.getCount());
+    }
+
+    @Test
+    public void dropsRequestsThatAreSuperseded() throws Exception {
+        latency.markSample();
+        latency.markChanged();
+        latency.markDelivered();
+        latency.markRequested();
+        latency.markHandled();
+
+        // The user disables the app before DND was applied
+        now += SECOND;
+        latency.markRequested();
+        latency.markApplied();
+
+        // A new change is timed on its own
+        now += SECOND;
+        latency.markSample();
+        now += MILLISECOND;
+        latency.markChanged();
+        now += MILLISECOND;
+        latency.markDelivered();
+        latency.markRequested();
+        latency.markHandled();
+        now += MILLISECOND;
+        latency.markApplied();
+
+        // Nothing to apply
+        latency.markApplied();
+
+        Histogram total = registry.histogram("latency.total_us", Histogram.LATENCY_BOUNDS_US);
+        assertEquals(1, total.getCount());
+        assertEquals(3000, total.getMax());
+    }
+
+    private static class FakeSource implements SensorSource {
+        SampleListener listener;
+
+        @Override
+        public void start(SampleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public void setSamplingPeriod(int samplingPeriodUs) {}
+    }
+}
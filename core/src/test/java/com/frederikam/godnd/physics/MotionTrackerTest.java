@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import com.frederikam.godnd.metrics.Clock;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+import com.frederikam.godnd.power.PowerBudget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MotionTrackerTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void keepsOneVelocityPerSleepIntervalAtAnyRate() throws Exception {
+        FakeSource source = new FakeSource();
+        LinearMotionManager manager = new LinearMotionManager(source, new MotionConfig(8, 1.5, 100, 500, true));
+        manager.setDetectionLatency(null);
+        manager.start();
+
+        // Lying still, far from the threshold, so the scheduler soon slows down to its slowest rate
+        long time = 0;
+        while (time < 30 * SECOND) {
+            source.listener.onSample(time, SensorType.LINEAR_ACCELERATION, 0, 0, 0);
+            time += source.samplingPeriod * 1000L;
+        }
+        assertEquals(200000, source.samplingPeriod);
+
+        MotionStats stats = new MotionStats();
+        manager.readStats(stats);
+        // One every half second, rounded up to a whole number of samples at each rate. Rather than one every 5 s
+        // at 5 Hz, as a fixed ratio made for 50 Hz would keep.
+        assertTrue(stats.size > 45 && stats.size <= 60);
+    }
+
+    @Test
+    public void reportsToTheRegistryAndBudgetOfItsManager() throws Exception {
+        final long[] now = {0};
+        MetricsRegistry registry = new MetricsRegistry(new Clock() {
+            @Override
+            public long nanoTime() {
+                return now[0];
+            }
+        });
+        PowerBudget budget = new PowerBudget(registry, PowerBudget.DEFAULT_BUDGET);
+        long shared = MetricsRegistry.DEFAULT.meter("sensor.events").getCount();
+
+        FakeSource source = new FakeSource();
+        LinearMotionManager manager = new LinearMotionManager(source);
+        manager.setDetectionLatency(null);
+        manager.setMetricsRegistry(registry);
+        manager.setPowerBudget(budget);
+        manager.start();
+        for (int i = 0; i < 100; i++) {
+            source.listener.onSample(i * SECOND / 50, SensorType.LINEAR_ACCELERATION, 0, 0, 0);
+        }
+
+        assertEquals(100, registry.meter("sensor.events").getCount());
+        long kept = registry.counter("tracker.samples.kept").get();
+        assertTrue(kept > 0);
+        assertEquals(kept, registry.histogram("motion.tick_us", null).getCount());
+        assertEquals(shared, MetricsRegistry.DEFAULT.meter("sensor.events").getCount());
+
+        // The events are charged once their minute is over
+        now[0] = 61 * SECOND;
+        assertTrue(budget.getHourlyEstimate() > 0);
+    }
+
+    private static class FakeSource implements SensorSource {
+        SampleListener listener;
+        int samplingPeriod;
+
+        @Override
+        public void start(SampleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public void setSamplingPeriod(int samplingPeriodUs) {
+            samplingPeriod = samplingPeriodUs;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SampleWindowTest {
+
+    @Test
+    public void statisticsMatchNaiveComputation() throws Exception {
+        SampleWindow window = new SampleWindow(30);
+        double[] history = new double[5000];
+        Random random = new Random(42);
+
+        for (int i = 0; i < history.length; i++) {
+            history[i] = random.nextDouble() * 20 - 5;
+            window.add(history[i]);
+
+            int from = Math.max(0, i - 29);
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int j = from; j <= i; j++) {
+                sum += history[j];
+                min = Math.min(min, history[j]);
+                max = Math.max(max, history[j]);
+            }
+            int n = i - from + 1;
+            double mean = sum / n;
+            double variance = 0;
+            for (int j = from; j <= i; j++) {
+                variance += (history[j] - mean) * (history[j] - mean);
+            }
+            variance /= n;
+
+            assertEquals(n, window.size());
+            assertEquals(mean, window.getMean(), 1e-9);
+            assertEquals(variance, window.getVariance(), 1e-6);
+            assertEquals(min, window.getMin(), 0);
+            assertEquals(max, window.getMax(), 0);
+        }
+    }
+
+    @Test
+    public void clearEmptiesWindow() throws Exception {
+        SampleWindow window = new SampleWindow(4);
+        window.add(1);
+        window.add(2);
+        window.clear();
+        assertEquals(0, window.size());
+
+        window.add(7);
+        assertEquals(7, window.getMin(), 0);
+        assertEquals(7, window.getMax(), 0);
+        assertEquals(7, window.getMean(), 0);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class StatsSeqlockTest {
+
+    private static final int CAPACITY = 30;
+
+    @Test
+    public void readersNeverSeeTornStats() throws Exception {
+        final SampleWindow window = new SampleWindow(CAPACITY);
+        final StatsSeqlock lock = new StatsSeqlock();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final int readers = 3;
+        final CountDownLatch done = new CountDownLatch(readers);
+
+        for (int r = 0; r < readers; r++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    MotionStats stats = new MotionStats();
+                    double lastMax = -1;
+                    long reads = 0;
+                    while (running.get() || reads < 1000) {
+                        lock.read(stats);
+                        reads++;
+                        String error = check(stats, lastMax);
+                        if (error != null) {
+                            failure.compareAndSet(null, error);
+                            break;
+                        }
+                        lastMax = stats.getMax();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // The writer publishes 0, 1, 2, ... so every consistent snapshot is fully determined by its latest value
+        long deadline = System.nanoTime() + 500000000L;
+        for (long i = 0; System.nanoTime() < deadline; i++) {
+            window.add(i);
+            lock.publish(window, i);
+        }
+        running.set(false);
+        done.await();
+
+        assertNull(failure.get(), failure.get());
+    }
+
+    private static String check(MotionStats stats, double lastMax) {
+        if (stats.getSize() == 0) return null;
+
+        double max = stats.getMax();
+        double min = stats.getMin();
+        if (max != stats.getTimestamp()) return "Max doesn't belong to this sample: " + stats;
+        if (max < lastMax) return "Went back in time: " + stats;
+        if (max - min != stats.getSize() - 1) return "Min doesn't match max: " + stats;
+        if (stats.getMean() != (min + max) / 2) return "Mean doesn't match min and max: " + stats;
+
+        double n = stats.getSize();
+        if (Math.abs(stats.getVariance() - (n * n - 1) / 12) > 1e-3) return "Variance doesn't match size: " + stats;
+        return null;
+    }
+}
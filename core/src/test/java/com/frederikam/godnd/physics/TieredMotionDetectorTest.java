@@ -0,0 +1,222 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TieredMotionDetectorTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long PERIOD = SECOND / 50;
+
+    private FakeTrigger trigger;
+    private FakeSource source;
+    private TieredMotionDetector detector;
+    private long time = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        trigger = new FakeTrigger();
+        source = new FakeSource();
+        detector = new TieredMotionDetector(new LinearMotionManager(source), trigger, 30 * SECOND);
+    }
+
+    @Test
+    public void startsInLowPowerTier() throws Exception {
+        detector.start();
+
+        assertNotNull(trigger.listener);
+        assertNull(source.listener);
+        assertFalse(detector.isActive());
+    }
+
+    @Test
+    public void triggerStartsSamplingUntilQuiet() throws Exception {
+        detector.start();
+        trigger.fire();
+
+        assertTrue(detector.isActive());
+        assertNotNull(source.listener);
+        assertNull(trigger.listener);
+
+        // Lie still until we give up
+        feed(29, 0);
+        assertTrue(detector.isActive());
+        feed(5, 0);
+
+        assertFalse(detector.isActive());
+        assertNull(source.listener);
+        assertNotNull(trigger.listener);
+    }
+
+    @Test
+    public void staysActiveWhileInMotion() throws Exception {
+        detector.start();
+        trigger.fire();
+
+        // Accelerate for a while, then cruise on a slightly bumpy road
+        feed(20, 1);
+        assertTrue(detector.isInMotion());
+        feedVibrating(60);
+
+        assertTrue(detector.isInMotion());
+        assertTrue(detector.isActive());
+    }
+
+    @Test
+    public void stopDisarmsEverything() throws Exception {
+        detector.start();
+        trigger.fire();
+        detector.stop();
+
+        assertNull(trigger.listener);
+        assertNull(source.listener);
+        assertFalse(detector.isActive());
+
+        // A late trigger must not bring the pipeline back
+        trigger.listener = detector;
+        trigger.fire();
+        assertNull(source.listener);
+    }
+
+    @Test
+    public void keepsRunningWithoutTrigger() throws Exception {
+        trigger.available = false;
+        detector = new TieredMotionDetector(new LinearMotionManager(source), trigger, 30 * SECOND);
+        detector.start();
+
+        assertTrue(detector.isActive());
+        assertNull(trigger.listener);
+        feed(120, 0);
+
+        assertTrue(detector.isActive());
+        assertNotNull(source.listener);
+        assertNull(trigger.listener);
+    }
+
+    @Test
+    public void forgetsSamplesFromBeforeLowPower() throws Exception {
+        detector.start();
+        trigger.fire();
+        feed(40, 0);
+        assertFalse(detector.isActive());
+
+        MotionStats stats = new MotionStats();
+        detector.readStats(stats);
+        assertEquals(0, stats.size);
+    }
+
+    @Test
+    public void restartsActiveWhileInMotion() throws Exception {
+        detector.start();
+        trigger.fire();
+        feed(20, 1);
+        assertTrue(detector.isInMotion());
+
+        detector.stop();
+        detector.start();
+        assertTrue(detector.isActive());
+        assertNotNull(source.listener);
+        assertNull(trigger.listener);
+    }
+
+    @Test
+    public void resetEndsMotion() throws Exception {
+        final boolean[] inMotion = {false};
+        detector.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean moving) {
+                inMotion[0] = moving;
+            }
+        });
+        detector.start();
+        trigger.fire();
+        feed(20, 1);
+        assertTrue(inMotion[0]);
+
+        detector.stop();
+        detector.reset();
+        assertFalse(detector.isInMotion());
+        assertFalse(inMotion[0]);
+    }
+
+    private void feed(int seconds, float acceleration) {
+        for (long end = time + seconds * SECOND; time < end && source.listener != null; time += PERIOD) {
+            source.listener.onSample(time, SensorType.LINEAR_ACCELERATION, acceleration, 0, 0);
+        }
+    }
+
+    private void feedVibrating(int seconds) {
+        float vibration = 0.3f;
+        for (long end = time + seconds * SECOND; time < end && source.listener != null; time += PERIOD) {
+            vibration = -vibration;
+            source.listener.onSample(time, SensorType.LINEAR_ACCELERATION, vibration, 0, 0);
+        }
+    }
+
+    private static class FakeTrigger implements TriggerSource {
+        Listener listener;
+        boolean available = true;
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public void arm(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void disarm() {
+            listener = null;
+        }
+
+        void fire() {
+            Listener listener = this.listener;
+            this.listener = null;
+            listener.onTrigger();
+        }
+    }
+
+    private static class FakeSource implements SensorSource {
+        SampleListener listener;
+
+        @Override
+        public void start(SampleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public void setSamplingPeriod(int samplingPeriodUs) {}
+    }
+}
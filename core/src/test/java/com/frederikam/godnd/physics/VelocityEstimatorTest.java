@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VelocityEstimatorTest {
+
+    private static final float G = 9.81f;
+    private static final long PERIOD = 10000000L; // 100 Hz
+
+    @Test
+    public void stationaryDeviceDoesNotDrift() throws Exception {
+        VelocityEstimator estimator = new VelocityEstimator();
+        Random random = new Random(1);
+
+        // Ten minutes on a desk, with a slightly noisy and biased accelerometer
+        for (long t = 0; t < 600L * 1000000000L; t += PERIOD) {
+            estimator.onRotation(t, noise(random, 0.005f), noise(random, 0.005f), noise(random, 0.005f));
+            estimator.onAcceleration(t, 0.02f + noise(random, 0.01f), noise(random, 0.01f), G + noise(random, 0.01f), true);
+        }
+
+        assertEquals(0, estimator.getSpeed(), 0.5);
+    }
+
+    @Test
+    public void integratesLinearAcceleration() throws Exception {
+        VelocityEstimator estimator = new VelocityEstimator();
+
+        // Accelerate at 1 m/s^2 for ten seconds
+        for (long t = 0; t <= 10L * 1000000000L; t += PERIOD) {
+            estimator.onAcceleration(t, 1, 0, 0, false);
+        }
+
+        assertEquals(10, estimator.getSpeed(), 0.5);
+    }
+
+    @Test
+    public void sustainedAccelerationIsNotGravity() throws Exception {
+        VelocityEstimator estimator = new VelocityEstimator();
+        Random random = new Random(1);
+
+        // Lying flat in a car for half a minute, which pulls away at 2 m/s^2 for seven seconds and then cruises on a
+        // bumpy road for a minute
+        for (long t = 0; t < 97L * 1000000000L; t += PERIOD) {
+            float forward = t >= 30L * 1000000000L && t < 37L * 1000000000L ? 2 : 0;
+            estimator.onRotation(t, noise(random, 0.005f), noise(random, 0.005f), noise(random, 0.005f));
+            estimator.onAcceleration(t, forward + noise(random, 0.2f), noise(random, 0.2f), G + noise(random, 0.2f), true);
+        }
+
+        assertEquals(14 * Math.exp(-60.0 / 300), estimator.getSpeed(), 2);
+    }
+
+    @Test
+    public void rotatingInPlaceIsNotMotion() throws Exception {
+        VelocityEstimator estimator = new VelocityEstimator();
+
+        // Spin around the x axis at 1 rad/s for 30 seconds. Gravity rotates the other way in the device's frame.
+        for (long t = 0; t < 30L * 1000000000L; t += PERIOD) {
+            double angle = t / 1e9;
+            estimator.onRotation(t, 1, 0, 0);
+            estimator.onAcceleration(t, 0, (float) (G * Math.sin(angle)), (float) (G * Math.cos(angle)), true);
+        }
+
+        assertEquals(0, estimator.getSpeed(), 2);
+    }
+
+    private static float noise(Random random, float amplitude) {
+        return (float) random.nextGaussian() * amplitude;
+    }
+}
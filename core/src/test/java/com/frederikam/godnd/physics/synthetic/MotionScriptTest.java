@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.synthetic;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MotionScriptTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void parsesSteps() throws Exception {
+        List<MotionScript.Step> steps = MotionScript.parse(
+                "stationary 30 s, walk 1.5 min # to the car\n"
+                + "Accelerate to 50 km/h; turn left 90 deg over 5s\n"
+                + "stop at a light, cruise 500ms, stop over 4 s").getSteps();
+
+        assertEquals(8, steps.size());
+        assertEquals(MotionScript.Step.STILL, steps.get(0).getKind());
+        assertEquals(30 * SECOND, steps.get(0).getDuration());
+        assertEquals(90 * SECOND, steps.get(1).getDuration());
+        assertEquals(MotionScript.Step.ACCELERATE, steps.get(2).getKind());
+        assertEquals(-1, steps.get(2).getDuration());
+        assertEquals(5 * SECOND, steps.get(3).getDuration());
+        // A stop at a light is a stop followed by a wait
+        assertEquals(MotionScript.Step.ACCELERATE, steps.get(4).getKind());
+        assertEquals(MotionScript.Step.WAIT, steps.get(5).getKind());
+        assertEquals(SECOND / 2, steps.get(6).getDuration());
+        assertEquals(4 * SECOND, steps.get(7).getDuration());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownSteps() throws Exception {
+        MotionScript.parse("still 30 s, fly to 900 km/h");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyScripts() throws Exception {
+        MotionScript.parse("# nothing to see here\n");
+    }
+
+}
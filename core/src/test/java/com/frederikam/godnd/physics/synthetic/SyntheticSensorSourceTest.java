@@ -0,0 +1,187 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.synthetic;
+
+import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.physics.MotionListener;
+import com.frederikam.godnd.physics.MotionManager;
+import com.frederikam.godnd.physics.NonlinearMotionManager;
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorType;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyntheticSensorSourceTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final String COMMUTE = "still 30 s, walk 60 s, accelerate to 50 km/h, cruise 60 s, turn right 90 deg, "
+            + "cruise 30 s, stop at a light for 5 s, accelerate to 50 km/h, cruise 60 s, stop, walk 30 s, still 60 s";
+
+    @Test
+    public void detectsTheCarRide() throws Exception {
+        MotionScript commute = MotionScript.parse(COMMUTE);
+        assertEquals(2, countChanges(new SyntheticSensorSource(commute, false, 1), true));
+        assertEquals(2, countChanges(new SyntheticSensorSource(commute, true, 1), false));
+    }
+
+    @Test
+    public void detectsALongCruise() throws Exception {
+        MotionScript script = MotionScript.parse("still 30 s, accelerate to 50 km/h, cruise 5 min, stop, still 60 s");
+        assertEquals(2, countChanges(new SyntheticSensorSource(script, false, 1), true));
+        assertEquals(2, countChanges(new SyntheticSensorSource(script, true, 1), false));
+    }
+
+    @Test
+    public void accelerometerIncludesGravity() throws Exception {
+        SyntheticSensorSource source = new SyntheticSensorSource(MotionScript.parse("still 10 s"), true, 1);
+        final double[] sum = new double[3];
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                if (sensorType != SensorType.ACCELEROMETER) return;
+                sum[0] += x;
+                sum[1] += y;
+                sum[2] += z;
+            }
+        });
+        long samples = source.run() / 2;
+
+        assertEquals(0, sum[0] / samples, 0.01);
+        assertEquals(0, sum[1] / samples, 0.01);
+        assertEquals(9.81, sum[2] / samples, 0.01);
+    }
+
+    @Test
+    public void walkingIsNotMotion() throws Exception {
+        MotionScript script = MotionScript.parse("still 30 s, walk 5 min, still 30 s");
+        for (long seed = 0; seed < 5; seed++) {
+            assertEquals(0, countChanges(new SyntheticSensorSource(script, false, seed), true));
+            assertEquals(0, countChanges(new SyntheticSensorSource(script, true, seed), false));
+        }
+    }
+
+    @Test
+    public void samplesAtFixedRates() throws Exception {
+        SyntheticSensorSource source = new SyntheticSensorSource(MotionScript.parse("still 10 s"), false, 1);
+        source.setFixedRate(5000);
+        final long[] samples = new long[1];
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                samples[0]++;
+            }
+        });
+
+        // Requests from the tracker are ignored
+        source.setSamplingPeriod(20000);
+
+        assertEquals(2 * 5000 * 10, source.run());
+        assertEquals(2 * 5000 * 10, samples[0]);
+        assertTrue(source.isFinished());
+    }
+
+    @Test
+    public void advancesInSteps() throws Exception {
+        SyntheticSensorSource source = new SyntheticSensorSource(MotionScript.parse("still 1 s, walk 1 s"), false, 1);
+        final List<Long> timestamps = new ArrayList<>();
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                timestamps.add(timestamp);
+            }
+        });
+        source.setLooping(true);
+
+        // 50 Hz, with an acceleration and a rotation sample for each
+        assertEquals(50, source.advance(SECOND / 2));
+        assertEquals(SECOND / 2, source.getTime());
+        assertEquals(350, source.advance(7 * SECOND / 2));
+        assertFalse(source.isFinished());
+        assertEquals(4 * SECOND - SECOND / 50, (long) timestamps.get(timestamps.size() - 1));
+    }
+
+    @Test
+    public void loopsOverStepsThatTakeNoTime() throws Exception {
+        SyntheticSensorSource source = new SyntheticSensorSource(MotionScript.parse("stop, wait 0 s, still 1 s"), false, 1);
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+            }
+        });
+        source.setLooping(true);
+
+        assertEquals(500, source.advance(5 * SECOND));
+    }
+
+    @Test(timeout = 1000, expected = IllegalStateException.class)
+    public void rejectsLoopingScriptsThatTakeNoTime() throws Exception {
+        SyntheticSensorSource source = new SyntheticSensorSource(MotionScript.parse("stop, accelerate to 0 km/h, wait 0 s"), false, 1);
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+            }
+        });
+        source.setLooping(true);
+        source.advance(SECOND);
+    }
+
+    @Test
+    public void isDeterministic() throws Exception {
+        assertEquals(checksum(7), checksum(7), 0);
+        assertTrue(checksum(7) != checksum(8));
+    }
+
+    private static int countChanges(SyntheticSensorSource source, boolean linear) {
+        MotionManager manager = linear ? new LinearMotionManager(source) : new NonlinearMotionManager(source);
+        final int[] changes = new int[1];
+        manager.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean inMotion) {
+                changes[0]++;
+            }
+        });
+        manager.start();
+        source.run();
+        assertFalse(manager.isInMotion());
+        return changes[0];
+    }
+
+    private static double checksum(long seed) {
+        SyntheticSensorSource source = new SyntheticSensorSource(MotionScript.parse("walk 5 s, accelerate to 20 m/s"), true, seed);
+        final double[] sum = new double[1];
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                sum[0] += x + 2 * y + 3 * z;
+            }
+        });
+        source.run();
+        return sum[0];
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics.trace;
+
+import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.physics.MotionListener;
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.SensorType;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceReplayTest {
+
+    private static final long PERIOD = 20000000L; // 50 Hz
+
+    @Test
+    public void recordedSamplesReplayUnchanged() throws Exception {
+        File file = File.createTempFile("replay", ".trace");
+        file.deleteOnExit();
+
+        FakeSource fake = new FakeSource();
+        final List<float[]> recorded = new ArrayList<>();
+        TraceRecorder recorder = new TraceRecorder(fake, file);
+        recorder.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                recorded.add(new float[]{timestamp, sensorType, x, y, z});
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            fake.listener.onSample(i * PERIOD, SensorType.LINEAR_ACCELERATION, i, -i, i / 2f);
+        }
+        recorder.close();
+        assertNull(recorder.getError());
+
+        final List<float[]> replayed = new ArrayList<>();
+        ReplaySensorSource replay = new ReplaySensorSource(file);
+        replay.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                replayed.add(new float[]{timestamp, sensorType, x, y, z});
+            }
+        });
+
+        assertEquals(1000, replay.replay());
+        assertEquals(recorded.size(), replayed.size());
+        for (int i = 0; i < recorded.size(); i++) {
+            assertArrayEquals(recorded.get(i), replayed.get(i), 0);
+        }
+    }
+
+    @Test
+    public void restartsAppendToTheSameTrace() throws Exception {
+        File file = File.createTempFile("restart", ".trace");
+        file.deleteOnExit();
+
+        // The tiered detector stops and starts the pipeline every time it goes to sleep and wakes up
+        FakeSource fake = new FakeSource();
+        TraceRecorder recorder = new TraceRecorder(fake, file);
+        SampleListener ignore = new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {}
+        };
+        for (int run = 0; run < 3; run++) {
+            recorder.start(ignore);
+            for (int i = 0; i < 300; i++) {
+                fake.listener.onSample((run * 1000 + i) * PERIOD, SensorType.LINEAR_ACCELERATION, run, 0, 0);
+            }
+            recorder.stop();
+        }
+        recorder.close();
+        assertNull(recorder.getError());
+
+        final List<Long> replayed = new ArrayList<>();
+        ReplaySensorSource replay = new ReplaySensorSource(file);
+        replay.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                replayed.add(timestamp);
+            }
+        });
+
+        assertEquals(900, replay.replay());
+        assertEquals(Long.valueOf(0), replayed.get(0));
+        assertEquals(Long.valueOf(2299 * PERIOD), replayed.get(899));
+    }
+
+    @Test
+    public void replayDrivesMotionManager() throws Exception {
+        File file = File.createTempFile("drive", ".trace");
+        file.deleteOnExit();
+
+        // One minute of accelerating at 1 m/s^2
+        FakeSource fake = new FakeSource();
+        TraceRecorder recorder = new TraceRecorder(fake, file);
+        recorder.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {}
+        });
+        for (int i = 0; i < 60 * 50; i++) {
+            fake.listener.onSample(i * PERIOD, SensorType.LINEAR_ACCELERATION, 1, 0, 0);
+        }
+        recorder.close();
+
+        final List<Boolean> changes = new ArrayList<>();
+        ReplaySensorSource replay = new ReplaySensorSource(file);
+        LinearMotionManager manager = new LinearMotionManager(replay);
+        manager.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean inMotion) {
+                changes.add(inMotion);
+            }
+        });
+        manager.start();
+        replay.replay();
+        manager.stop();
+
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0));
+        assertTrue(manager.isInMotion());
+    }
+
+    private static class FakeSource implements SensorSource {
+        SampleListener listener;
+
+        @Override
+        public void start(SampleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public void setSamplingPeriod(int samplingPeriodUs) {}
+    }
+}
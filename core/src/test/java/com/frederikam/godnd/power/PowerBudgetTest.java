@@ -0,0 +1,170 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.power;
+
+import com.frederikam.godnd.metrics.Clock;
+import com.frederikam.godnd.metrics.MetricsRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PowerBudgetTest {
+
+    private static final long MILLISECOND = 1000000L;
+    private static final long MINUTE = 60 * 1000 * MILLISECOND;
+
+    private final List<Integer> levels = new ArrayList<>();
+    private MetricsRegistry registry;
+    private PowerBudget budget;
+    private long now = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new MetricsRegistry(new Clock() {
+            @Override
+            public long nanoTime() {
+                return now;
+            }
+        });
+        budget = new PowerBudget(registry, 10);
+        budget.setListener(new PowerBudget.Listener() {
+            @Override
+            public void onLevelChanged(int level) {
+                levels.add(level);
+            }
+        });
+    }
+
+    @Test
+    public void integratesSensorCurrent() throws Exception {
+        budget.setSensorCurrent(6, 0);
+        now += 30 * MINUTE;
+        budget.setSensorCurrent(0, 0);
+        now += 30 * MINUTE;
+
+        assertEquals(3, budget.getHourlyEstimate(), 0.001);
+        assertEquals(3000, registry.gauge("power.hourly_uah").get());
+    }
+
+    @Test
+    public void scalesUpPartialHours() throws Exception {
+        budget.setSensorCurrent(6, 0);
+        now += 10 * MINUTE;
+
+        assertEquals(6, budget.getHourlyEstimate(), 0.001);
+    }
+
+    @Test
+    public void batchingSavesWakeups() throws Exception {
+        // Delivered twice a second, with half a mAs for every wakeup
+        budget.setSensorCurrent(0, 500 * 1000);
+        now += 60 * MINUTE;
+        assertEquals(1, budget.getHourlyEstimate(), 0.001);
+
+        // Delivered at 50 Hz, which keeps the CPU awake rather than waking it up 50 times a second
+        setUp();
+        budget.setSensorCurrent(0, 20 * 1000);
+        now += 60 * MINUTE;
+        assertEquals(5, budget.getHourlyEstimate(), 0.001);
+    }
+
+    @Test
+    public void degradesAfterFiveMinutesOverBudget() throws Exception {
+        budget.setSensorCurrent(20, 0);
+        now += 4 * MINUTE;
+        budget.getHourlyEstimate();
+        assertTrue(levels.isEmpty());
+
+        now += MINUTE;
+        budget.getHourlyEstimate();
+        assertEquals(PowerBudget.LEVEL_REDUCED_RATE, budget.getLevel());
+
+        // Still over, so the sensors go off as soon as we stop moving
+        now += 5 * MINUTE;
+        budget.getHourlyEstimate();
+        assertEquals(PowerBudget.LEVEL_LOW_POWER, budget.getLevel());
+
+        // There is nothing more we can give up
+        now += 30 * MINUTE;
+        budget.getHourlyEstimate();
+        assertEquals(PowerBudget.LEVEL_LOW_POWER, budget.getLevel());
+        assertEquals(2, levels.size());
+    }
+
+    @Test
+    public void slowerSamplingDrawsLessCurrent() throws Exception {
+        // An accelerometer that can do 200 Hz
+        assertEquals(1, PowerBudget.dutyCycle(5000, 5000), 0);
+        assertEquals(0.2 + 0.8 * 0.25, PowerBudget.dutyCycle(5000, 20000), 1e-9);
+        assertTrue(PowerBudget.dutyCycle(5000, PowerBudget.REDUCED_SAMPLING_PERIOD) < PowerBudget.dutyCycle(5000, 20000));
+        // Sensors that only report changes don't say
+        assertEquals(1, PowerBudget.dutyCycle(0, 20000), 0);
+    }
+
+    @Test
+    public void restoresOnceWellWithinBudget() throws Exception {
+        budget.setSensorCurrent(20, 0);
+        now += 5 * MINUTE;
+        budget.setSensorCurrent(8, 0);
+        assertEquals(PowerBudget.LEVEL_REDUCED_RATE, budget.getLevel());
+
+        // Within budget, but not by enough to go back
+        now += 40 * MINUTE;
+        budget.setSensorCurrent(2, 0);
+        assertEquals(PowerBudget.LEVEL_REDUCED_RATE, budget.getLevel());
+
+        now += 5 * MINUTE;
+        budget.getHourlyEstimate();
+        assertEquals(PowerBudget.LEVEL_FULL, budget.getLevel());
+        assertEquals(2, levels.size());
+    }
+
+    @Test
+    public void countsEventsCpuTimeAndBinderCalls() throws Exception {
+        // 1000 events, a second of CPU at 100 mA, and 72 binder calls
+        for (int i = 0; i < 1000; i++) {
+            budget.onSensorEvent();
+        }
+        budget.onCpuTime(1000 * MILLISECOND);
+        budget.onBinderCalls(72);
+        now += 60 * MINUTE;
+
+        assertEquals((1000 * 0.002 + 100 + 72 * 0.05) / 3600, budget.getHourlyEstimate(), 0.0001);
+    }
+
+    @Test
+    public void chargesTheMinuteItHappenedIn() throws Exception {
+        budget.onCpuTime(1000 * MILLISECOND);
+        now += MINUTE;
+
+        // Closes the first minute before counting its own calls, so they can't make it look more expensive
+        budget.onBinderCalls(72);
+        assertEquals((long) (100.0 / 3600 * 60 * 1000), registry.gauge("power.hourly_uah").get());
+    }
+
+}
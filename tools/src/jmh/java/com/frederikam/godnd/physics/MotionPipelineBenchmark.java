@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.physics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the code that runs for every sensor event. Run with the GC profiler to see allocations per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MotionPipelineBenchmark {
+
+    private static final int STREAM_LENGTH = 4096; // Power of two
+
+    /** Sensor delivery rate of the synthetic stream */
+    @Param({"5", "50", "200", "1000"})
+    public int rateHz;
+
+    /** Whether velocities are low-passed before the window keeps them */
+    @Param({"false", "true"})
+    public boolean decimate;
+
+    private final float[] stream = new float[STREAM_LENGTH * 3];
+    private long period;
+    private long timestamp = 0;
+    private int index = 0;
+
+    private ManualSource source;
+    private LinearMotionManager manager;
+    private MotionTracker tracker;
+
+    @Setup
+    public void setup() {
+        period = 1000000000L / rateHz;
+
+        // Jittery acceleration around a slow drive, roughly what a phone in a car sees
+        Random random = new Random(1337);
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            stream[i * 3] = 0.5f + (float) random.nextGaussian();
+            stream[i * 3 + 1] = (float) random.nextGaussian() * 0.3f;
+            stream[i * 3 + 2] = (float) random.nextGaussian() * 0.3f;
+        }
+
+        source = new ManualSource();
+        manager = new LinearMotionManager(source, new MotionConfig(8, 1.5, 30, 500, decimate));
+        tracker = new MotionTracker(500, 30, decimate, new ManualSource(), manager);
+        manager.start();
+        tracker.start();
+
+        // Fill the windows, so every benchmark sees the steady state
+        for (int i = 0; i < rateHz * 60; i++) {
+            feed(source.listener);
+            feed(tracker);
+        }
+    }
+
+    private void feed(SampleListener listener) {
+        int i = (index++ & (STREAM_LENGTH - 1)) * 3;
+        timestamp += period;
+        listener.onSample(timestamp, SensorType.LINEAR_ACCELERATION, stream[i], stream[i + 1], stream[i + 2]);
+    }
+
+    /**
+     * Ingests a single sample, including the decision that follows if the sample is kept
+     */
+    @Benchmark
+    public boolean ingest() {
+        feed(source.listener);
+        return manager.isInMotion();
+    }
+
+    @Benchmark
+    public double averageVelocity() {
+        return tracker.getAverageVelocity();
+    }
+
+    @Benchmark
+    public boolean tick() {
+        manager.tick();
+        return manager.isInMotion();
+    }
+
+    private static class ManualSource implements SensorSource {
+        SampleListener listener;
+
+        @Override
+        public void start(SampleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public void setSamplingPeriod(int samplingPeriodUs) {}
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.soak;
+
+import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.physics.MotionListener;
+import com.frederikam.godnd.physics.MotionManager;
+import com.frederikam.godnd.physics.NonlinearMotionManager;
+import com.frederikam.godnd.physics.synthetic.MotionScript;
+import com.frederikam.godnd.physics.synthetic.SyntheticSensorSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a looping motion script through the real managers on several threads at once, for hours of script time, and
+ * prints the throughput and how often each pipeline changed its mind. Nothing should leak, so the heap should stay
+ * flat however long it runs.
+ * <p>
+ * Usage: SoakRun [--rate hz] [--threads count] [--minutes minutes] [--accelerometer] [script file]
+ */
+public class SoakRun {
+
+    private static final String DEFAULT_SCRIPT = "still 30 s, walk 60 s, accelerate to 50 km/h, cruise 2 min, "
+            + "turn right 90 deg, stop at a light, accelerate to 80 km/h, cruise 3 min, stop, walk 30 s, still 2 min";
+    private static final long NANOS_PER_MINUTE = 60 * 1000000000L;
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int rate = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int minutes = 60;
+        boolean accelerometer = false;
+        String script = DEFAULT_SCRIPT;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--rate")) {
+                rate = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--minutes")) {
+                minutes = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--accelerometer")) {
+                accelerometer = true;
+            } else {
+                script = read(new File(args[i]));
+            }
+        }
+
+        final MotionScript motionScript = MotionScript.parse(script);
+        final int finalRate = rate;
+        final boolean finalAccelerometer = accelerometer;
+        final long duration = minutes * NANOS_PER_MINUTE;
+
+        System.out.println(String.format(Locale.US, "Playing %d min at %d Hz on %d threads", minutes, rate, threads));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < threads; i++) {
+            final long seed = i;
+            futures.add(executor.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return play(motionScript, finalRate, finalAccelerometer, seed, duration);
+                }
+            }));
+        }
+
+        long samples = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            long[] result = futures.get(i).get();
+            samples += result[0];
+            System.out.println(String.format(Locale.US, "Pipeline %d: %d samples, %d changes", i, result[0], result[1]));
+        }
+        executor.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println(String.format(Locale.US, "%.1f s, %.0f samples/s, %.1f times real time per pipeline, %d MiB heap used",
+                seconds, samples / seconds, duration / 1e9 / seconds, (runtime.totalMemory() - runtime.freeMemory()) >> 20));
+    }
+
+    /**
+     * @return the number of samples played, and the number of changes of state
+     */
+    private static long[] play(MotionScript script, int rate, boolean accelerometer, long seed, long duration) {
+        SyntheticSensorSource source = new SyntheticSensorSource(script, accelerometer, seed);
+        source.setFixedRate(rate);
+        source.setLooping(true);
+
+        MotionManager manager = accelerometer ? new NonlinearMotionManager(source) : new LinearMotionManager(source);
+        // Nothing reads the latencies or metrics, and the shared instances would add up every run in the process
+        manager.setDetectionLatency(null);
+        manager.setMetricsRegistry(null);
+        manager.setPowerBudget(null);
+        final long[] changes = new long[1];
+        manager.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean inMotion) {
+                changes[0]++;
+            }
+        });
+
+        manager.start();
+        long samples = source.advance(duration);
+        manager.stop();
+        return new long[]{samples, changes[0]};
+    }
+
+    private static String read(File file) throws IOException {
+        StringBuilder script = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append('\n');
+            }
+        } finally {
+            reader.close();
+        }
+        return script.toString();
+    }
+
+}
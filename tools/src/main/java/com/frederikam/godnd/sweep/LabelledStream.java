@@ -0,0 +1,233 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sweep;
+
+import com.frederikam.godnd.physics.SampleListener;
+import com.frederikam.godnd.physics.SensorSource;
+import com.frederikam.godnd.physics.SensorType;
+import com.frederikam.godnd.physics.trace.ReplaySensorSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sensor samples held in memory, along with the intervals in which the device was truly in a vehicle.
+ * Streams are immutable once built, so any number of threads may replay one at the same time.
+ */
+public class LabelledStream {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final String name;
+    private final int size;
+    private final long[] timestamps;
+    private final int[] types;
+    private final float[] x, y, z;
+    private final long[] motionStarts;
+    private final long[] motionEnds;
+    private final boolean linear;
+
+    private LabelledStream(Builder builder) {
+        name = builder.name;
+        size = builder.size;
+        timestamps = Arrays.copyOf(builder.timestamps, size);
+        types = Arrays.copyOf(builder.types, size);
+        x = Arrays.copyOf(builder.x, size);
+        y = Arrays.copyOf(builder.y, size);
+        z = Arrays.copyOf(builder.z, size);
+        motionStarts = Arrays.copyOf(builder.motionStarts, builder.motionCount);
+        motionEnds = Arrays.copyOf(builder.motionEnds, builder.motionCount);
+
+        boolean linear = false;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == SensorType.LINEAR_ACCELERATION) {
+                linear = true;
+                break;
+            }
+        }
+        this.linear = linear;
+    }
+
+    /**
+     * Loads a trace recorded by the app, labelled by a text file with one "start end" interval per line, in seconds
+     * from the first sample. Lines starting with # are ignored.
+     */
+    public static LabelledStream load(File trace, File labels) throws IOException {
+        final Builder builder = new Builder(trace.getName());
+        ReplaySensorSource source = new ReplaySensorSource(trace);
+        source.start(new SampleListener() {
+            @Override
+            public void onSample(long timestamp, int sensorType, float x, float y, float z) {
+                builder.addSample(timestamp, sensorType, x, y, z);
+            }
+        });
+        source.replay();
+
+        long origin = builder.size == 0 ? 0 : builder.timestamps[0];
+        BufferedReader reader = new BufferedReader(new FileReader(labels));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] parts = line.split("\\s+");
+                if (parts.length != 2) throw new IOException("Bad label in " + labels + ": " + line);
+                builder.addMotion(origin + (long) (Double.parseDouble(parts[0]) * NANOS_PER_SECOND),
+                        origin + (long) (Double.parseDouble(parts[1]) * NANOS_PER_SECOND));
+            }
+        } finally {
+            reader.close();
+        }
+
+        return builder.build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the stream has {@link SensorType#LINEAR_ACCELERATION} samples, rather than raw acceleration
+     */
+    public boolean isLinear() {
+        return linear;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    int getMotionCount() {
+        return motionStarts.length;
+    }
+
+    long getMotionStart(int index) {
+        return motionStarts[index];
+    }
+
+    long getMotionEnd(int index) {
+        return motionEnds[index];
+    }
+
+    /**
+     * @return the index of the labelled interval containing the time, or -1 if we weren't in motion
+     */
+    int motionAt(long timestamp) {
+        for (int i = 0; i < motionStarts.length; i++) {
+            if (timestamp >= motionStarts[i] && timestamp < motionEnds[i]) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Pushes a single sample to the listener
+     */
+    void replay(int index, SampleListener listener) {
+        listener.onSample(timestamps[index], types[index], x[index], y[index], z[index]);
+    }
+
+    /**
+     * A source that can be driven one sample at a time by {@link #replay(int, SampleListener)}
+     */
+    static class Source implements SensorSource {
+        SampleListener listener;
+
+        @Override
+        public void start(SampleListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public void setSamplingPeriod(int samplingPeriodUs) {
+            // Streams are replayed at the rate they were made
+        }
+    }
+
+    public static class Builder {
+
+        private final String name;
+        private int size = 0;
+        private long[] timestamps = new long[1024];
+        private int[] types = new int[1024];
+        private float[] x = new float[1024], y = new float[1024], z = new float[1024];
+        private int motionCount = 0;
+        private long[] motionStarts = new long[4];
+        private long[] motionEnds = new long[4];
+
+        public Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder addSample(long timestamp, int sensorType, float x, float y, float z) {
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                types = Arrays.copyOf(types, capacity);
+                this.x = Arrays.copyOf(this.x, capacity);
+                this.y = Arrays.copyOf(this.y, capacity);
+                this.z = Arrays.copyOf(this.z, capacity);
+            }
+
+            timestamps[size] = timestamp;
+            types[size] = sensorType;
+            this.x[size] = x;
+            this.y[size] = y;
+            this.z[size] = z;
+            size++;
+            return this;
+        }
+
+        /**
+         * Labels an interval, in sensor time, in which the device was in a vehicle
+         */
+        public Builder addMotion(long start, long end) {
+            if (end <= start) throw new IllegalArgumentException("Motion must end after it starts");
+            if (motionCount == motionStarts.length) {
+                motionStarts = Arrays.copyOf(motionStarts, motionCount * 2);
+                motionEnds = Arrays.copyOf(motionEnds, motionCount * 2);
+            }
+
+            motionStarts[motionCount] = start;
+            motionEnds[motionCount] = end;
+            motionCount++;
+            return this;
+        }
+
+        public LabelledStream build() {
+            return new LabelledStream(this);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sweep;
+
+import com.frederikam.godnd.physics.MotionConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the motion managers over labelled streams for a grid of configurations, on all cores, and prints a CSV line
+ * per configuration, best first.
+ * <p>
+ * Usage: ParameterSweep [--synthetic count] [--seed seed] [trace directory]
+ * <p>
+ * A trace directory holds traces recorded by the app ("*.trace"), each labelled by a "*.labels" file next to it.
+ * Without one, only synthetic streams are used.
+ */
+public class ParameterSweep {
+
+    private static final double[] THRESHOLDS_HIGH = {4, 5, 6, 7, 8, 9, 10, 12}; // m/s
+    private static final double[] THRESHOLDS_LOW = {0.5, 1, 1.5, 2, 3}; // m/s
+    private static final int[] MAX_HISTORIES = {10, 20, 30, 45, 60}; // samples
+    private static final int[] SLEEP_INTERVALS = {100, 250, 500, 1000}; // ms
+    private static final boolean[] DECIMATE = {false, true};
+
+    public static void main(String[] args) throws IOException {
+        int synthetic = 8;
+        long seed = 1;
+        File traces = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--synthetic")) {
+                synthetic = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                traces = new File(args[i]);
+            }
+        }
+
+        List<LabelledStream> streams = new ArrayList<>();
+        Collections.addAll(streams, SyntheticStreams.create(synthetic, seed));
+        if (traces != null) {
+            streams.addAll(loadTraces(traces));
+        }
+
+        MotionConfig[] configs = grid();
+        SweepResult[] results = new SweepResult[configs.length];
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        System.err.println("Evaluating " + configs.length + " configurations over " + streams.size() + " streams on "
+                + pool.getParallelism() + " threads");
+        long start = System.nanoTime();
+        pool.invoke(new SweepTask(configs, streams.toArray(new LabelledStream[streams.size()]), results, 0, configs.length));
+        pool.shutdown();
+        System.err.println("Done in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        Arrays.sort(results, SweepResult.BEST_FIRST);
+        System.out.println(SweepResult.CSV_HEADER);
+        for (SweepResult result : results) {
+            System.out.println(result.toCsv());
+        }
+    }
+
+    private static MotionConfig[] grid() {
+        List<MotionConfig> configs = new ArrayList<>();
+        for (double high : THRESHOLDS_HIGH) {
+            for (double low : THRESHOLDS_LOW) {
+                if (low >= high) continue;
+                for (int maxHistory : MAX_HISTORIES) {
+                    for (int sleepInterval : SLEEP_INTERVALS) {
+                        for (boolean decimate : DECIMATE) {
+                            configs.add(new MotionConfig(high, low, maxHistory, sleepInterval, decimate));
+                        }
+                    }
+                }
+            }
+        }
+        return configs.toArray(new MotionConfig[configs.size()]);
+    }
+
+    private static List<LabelledStream> loadTraces(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) throw new IOException("Not a directory: " + dir);
+
+        List<LabelledStream> streams = new ArrayList<>();
+        for (File trace : files) {
+            if (!trace.getName().endsWith(".trace")) continue;
+
+            File labels = new File(dir, trace.getName().replaceAll("\\.trace$", ".labels"));
+            if (!labels.isFile()) {
+                System.err.println("Skipping " + trace + ", it has no labels");
+                continue;
+            }
+            streams.add(LabelledStream.load(trace, labels));
+        }
+        return streams;
+    }
+}
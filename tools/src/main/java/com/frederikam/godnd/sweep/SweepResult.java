@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sweep;
+
+import com.frederikam.godnd.physics.MotionConfig;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * How one configuration did across all streams
+ */
+public class SweepResult {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Fewest missed trips first, then fewest false positives, then fastest detection */
+    public static final Comparator<SweepResult> BEST_FIRST = new Comparator<SweepResult>() {
+        @Override
+        public int compare(SweepResult a, SweepResult b) {
+            if (a.misses != b.misses) return a.misses < b.misses ? -1 : 1;
+            int fp = Double.compare(a.getFalsePositiveRate(), b.getFalsePositiveRate());
+            if (fp != 0) return fp;
+            return Double.compare(a.getMedianLatency(), b.getMedianLatency());
+        }
+    };
+
+    static final String CSV_HEADER = "high,low,max_history,sleep_interval_ms,decimate,trips,missed,"
+            + "latency_median_s,latency_p90_s,latency_max_s,false_positive_rate,false_changes,cpu_ns_per_sample";
+
+    private final MotionConfig config;
+    private long[] latencies = new long[16]; // ns from the start of a trip until we noticed
+    private int detected = 0;
+    private int trips = 0;
+    private int misses = 0;
+    private int falseChanges = 0; // Entering motion while not in a vehicle
+    private long falsePositiveTime = 0; // ns in motion while not in a vehicle
+    private long negativeTime = 0; // ns not in a vehicle
+    private long samples = 0;
+    private long cpuTime = 0; // ns
+
+    SweepResult(MotionConfig config) {
+        this.config = config;
+    }
+
+    void addTrip() {
+        trips++;
+    }
+
+    void addDetection(long latency) {
+        if (detected == latencies.length) latencies = Arrays.copyOf(latencies, detected * 2);
+        latencies[detected++] = latency;
+    }
+
+    void addMiss() {
+        misses++;
+    }
+
+    void addFalseChange() {
+        falseChanges++;
+    }
+
+    void addNegativeTime(long time, boolean inMotion) {
+        negativeTime += time;
+        if (inMotion) falsePositiveTime += time;
+    }
+
+    void addCpuTime(long samples, long cpuTime) {
+        this.samples += samples;
+        this.cpuTime += cpuTime;
+    }
+
+    public MotionConfig getConfig() {
+        return config;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of the time outside of vehicles that we wrongly spent in motion
+     */
+    public double getFalsePositiveRate() {
+        return negativeTime == 0 ? 0 : (double) falsePositiveTime / negativeTime;
+    }
+
+    /**
+     * @return seconds
+     */
+    public double getMedianLatency() {
+        return getLatencyPercentile(0.5);
+    }
+
+    private double getLatencyPercentile(double quantile) {
+        if (detected == 0) return Double.POSITIVE_INFINITY;
+        long[] sorted = Arrays.copyOf(latencies, detected);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(detected - 1, Math.ceil(quantile * detected) - 1);
+        return sorted[Math.max(0, index)] / NANOS_PER_SECOND;
+    }
+
+    public double getCpuPerSample() {
+        return samples == 0 ? 0 : (double) cpuTime / samples;
+    }
+
+    String toCsv() {
+        return config.getThresholdHigh() + "," + config.getThresholdLow() + "," + config.getMaxHistory() + ","
+                + config.getSleepInterval() + "," + config.isDecimating() + "," + trips + "," + misses + ","
+                + String.format(Locale.US, "%.2f,%.2f,%.2f,%.5f,", getMedianLatency(), getLatencyPercentile(0.9),
+                getLatencyPercentile(1), getFalsePositiveRate())
+                + falseChanges + "," + String.format(Locale.US, "%.1f", getCpuPerSample());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sweep;
+
+import com.frederikam.godnd.physics.LinearMotionManager;
+import com.frederikam.godnd.physics.MotionConfig;
+import com.frederikam.godnd.physics.MotionListener;
+import com.frederikam.godnd.physics.MotionManager;
+import com.frederikam.godnd.physics.NonlinearMotionManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a range of configurations against every stream, splitting the range in half until each task is left
+ * with a single configuration. Each configuration gets fresh managers, so nothing is shared but the streams.
+ */
+class SweepTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final MotionConfig[] configs;
+    private final LabelledStream[] streams;
+    private final SweepResult[] results;
+    private final int from, to;
+
+    SweepTask(MotionConfig[] configs, LabelledStream[] streams, SweepResult[] results, int from, int to) {
+        this.configs = configs;
+        this.streams = streams;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new SweepTask(configs, streams, results, from, middle),
+                    new SweepTask(configs, streams, results, middle, to));
+            return;
+        }
+
+        SweepResult result = new SweepResult(configs[from]);
+        for (LabelledStream stream : streams) {
+            evaluate(configs[from], stream, result);
+        }
+        results[from] = result;
+    }
+
+    static void evaluate(MotionConfig config, LabelledStream stream, SweepResult result) {
+        LabelledStream.Source source = new LabelledStream.Source();
+        MotionManager manager = stream.isLinear()
+                ? new LinearMotionManager(source, config)
+                : new NonlinearMotionManager(source, config);
+        // Nothing reads the latencies or metrics. The shared instances can only time one pipeline at a time, and updating
+        // them from every task would contend and count towards the CPU time we measure.
+        manager.setDetectionLatency(null);
+        manager.setMetricsRegistry(null);
+        manager.setPowerBudget(null);
+
+        final boolean[] changed = {false};
+        manager.setMotionListener(new MotionListener() {
+            @Override
+            public void onMotionChanged(boolean inMotion) {
+                changed[0] = true;
+            }
+        });
+        manager.start();
+
+        boolean[] detected = new boolean[stream.getMotionCount()];
+        boolean inMotion = false;
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+
+        for (int i = 0; i < stream.size() && source.listener != null; i++) {
+            long timestamp = stream.getTimestamp(i);
+            int trip = stream.motionAt(timestamp);
+
+            if (trip < 0 && i + 1 < stream.size()) {
+                result.addNegativeTime(stream.getTimestamp(i + 1) - timestamp, inMotion);
+            }
+
+            changed[0] = false;
+            stream.replay(i, source.listener);
+            if (!changed[0]) continue;
+
+            inMotion = manager.isInMotion();
+            if (!inMotion) continue;
+
+            if (trip < 0) {
+                result.addFalseChange();
+            } else if (!detected[trip]) {
+                detected[trip] = true;
+                result.addDetection(timestamp - stream.getMotionStart(trip));
+            }
+        }
+
+        result.addCpuTime(stream.size(), THREADS.getCurrentThreadCpuTime() - cpuStart);
+        manager.stop();
+
+        for (boolean trip : detected) {
+            result.addTrip();
+            if (!trip) result.addMiss();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2017 Frederik Ar. Mikkelsen
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package com.frederikam.godnd.sweep;
+
+import com.frederikam.godnd.physics.SensorType;
+
+import java.util.Random;
+
+/**
+ * Generates days in the life of a phone: lying still, being carried around, and riding in a car. Only the car rides
+ * are labelled as motion, so walking is what tempts the detector into false positives.
+ */
+public final class SyntheticStreams {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int RATE = 50; // Hz, the default game rate
+    private static final long PERIOD = NANOS_PER_SECOND / RATE;
+
+    private SyntheticStreams() {}
+
+    /**
+     * @param seed streams are deterministic for a given seed
+     */
+    public static LabelledStream[] create(int count, long seed) {
+        LabelledStream[] streams = new LabelledStream[count];
+        for (int i = 0; i < count; i++) {
+            streams[i] = create("synthetic-" + i, new Random(seed + i));
+        }
+        return streams;
+    }
+
+    private static LabelledStream create(String name, Random random) {
+        Generator generator = new Generator(new LabelledStream.Builder(name), random);
+
+        for (int trip = 0; trip < 2; trip++) {
+            generator.still(60 + random.nextInt(120));
+            generator.walk(30 + random.nextInt(90));
+            generator.drive(60 + random.nextInt(240));
+            generator.walk(15 + random.nextInt(60));
+        }
+        generator.still(60);
+
+        return generator.builder.build();
+    }
+
+    private static class Generator {
+
+        private final LabelledStream.Builder builder;
+        private final Random random;
+        private long time = 0;
+
+        Generator(LabelledStream.Builder builder, Random random) {
+            this.builder = builder;
+            this.random = random;
+        }
+
+        void still(int seconds) {
+            for (long end = time + seconds * NANOS_PER_SECOND; time < end; time += PERIOD) {
+                sample(0, 0.03);
+            }
+        }
+
+        void walk(int seconds) {
+            // Steps at about 2 Hz, with the swing of the arm on top
+            double stepRate = 1.6 + random.nextDouble() * 0.6;
+            double amplitude = 1 + random.nextDouble() * 2;
+            for (long end = time + seconds * NANOS_PER_SECOND; time < end; time += PERIOD) {
+                double t = (double) time / NANOS_PER_SECOND;
+                sample(amplitude * Math.sin(2 * Math.PI * stepRate * t), 0.4);
+            }
+        }
+
+        void drive(int cruiseSeconds) {
+            long start = time;
+            double acceleration = 1.5 + random.nextDouble() * 1.5; // m/s^2
+            double speed = 10 + random.nextDouble() * 20; // m/s
+            long rampTime = (long) (speed / acceleration * NANOS_PER_SECOND);
+
+            for (long end = time + rampTime; time < end; time += PERIOD) {
+                sample(acceleration, 0.3);
+            }
+            for (long end = time + cruiseSeconds * NANOS_PER_SECOND; time < end; time += PERIOD) {
+                sample(0, 0.3);
+            }
+            for (long end = time + rampTime; time < end; time += PERIOD) {
+                sample(-acceleration, 0.3);
+            }
+
+            builder.addMotion(start, time);
+        }
+
+        /**
+         * Forward acceleration in m/s^2, with gaussian noise on every axis
+         */
+        private void sample(double forward, double noise) {
+            builder.addSample(time, SensorType.LINEAR_ACCELERATION,
+                    (float) (forward + random.nextGaussian() * noise),
+                    (float) (random.nextGaussian() * noise),
+                    (float) (random.nextGaussian() * noise));
+        }
+    }
+}